@@ -1,23 +1,33 @@
 package pl.zielony.animator;
 
-import android.os.Handler;
-import android.os.Looper;
 import android.view.animation.Interpolator;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class Animator {
+    public static final int PROPERTY_NONE = 0;
+    public static final int PROPERTY_ALPHA = 1;
+    public static final int PROPERTY_SCALE = 1 << 1;
+    public static final int PROPERTY_TRANSLATION = 1 << 2;
+    public static final int PROPERTY_ROTATION = 1 << 3;
+    public static final int PROPERTY_UNKNOWN = -1;
+
     private long duration;
     private long delay;
     private long startTime;
     private List<AnimatorListener> listeners = new ArrayList<>();
     private UpdateListener updateListener;
     private Interpolator interpolator;
+    private Object statsKey;
+    private FrameRecorder frameRecorder;
+    private int animatedProperties = PROPERTY_UNKNOWN;
 
-    private Handler handler = new Handler(Looper.getMainLooper());
+    private static final long NOT_STARTED = -1;
 
     private boolean running = false;
+    private boolean started = false;
+    boolean ticking = false;
 
     public Animator() {
     }
@@ -33,63 +43,81 @@ public class Animator {
         this.updateListener = updateListener;
     }
 
-    private Runnable startRunnable = new Runnable() {
-        @Override
-        public void run() {
-            synchronized (Animator.this) {
+    /**
+     * Called by FrameClock once per frame.
+     *
+     * @param frameTime frame time in milliseconds
+     * @return true if this animator wants to be ticked in the next frame
+     */
+    boolean doFrame(long frameTime) {
+        synchronized (Animator.this) {
+            if (!running)
+                return false;
+            if (startTime == NOT_STARTED)
+                startTime = frameTime + delay;
+            if (frameTime < startTime)
+                return true;
+            if (frameRecorder != null)
+                frameRecorder.onFrame(frameTime);
+            if (!started) {
+                started = true;
                 for (AnimatorListener listener : listeners)
                     listener.onStart();
-                if (updateListener != null)
-                    updateListener.onUpdate(0);
-                handler.post(updateRunnable);
-            }
-        }
-    };
-
-    private Runnable updateRunnable = new Runnable() {
-        @Override
-        public void run() {
-            synchronized (Animator.this) {
                 if (!running)
-                    return;
-                long time = System.currentTimeMillis();
-                if (startTime + duration > time) {
-                    time = Math.min(time, startTime + duration);
-                    if (updateListener != null) {
-                        float interpolation = (float) (time - startTime) / duration;
-                        if (interpolator != null)
-                            interpolation = interpolator.getInterpolation(interpolation);
-                        updateListener.onUpdate(interpolation);
-                    }
-                    handler.post(this);
-                } else {
-                    if (updateListener != null)
-                        updateListener.onUpdate(1);
-                    running = false;
-                    for (AnimatorListener listener : listeners)
-                        listener.onEnd();
-                }
+                    return false;
             }
-        }
-    };
-    private Runnable cancelRunnable = new Runnable() {
-        @Override
-        public void run() {
-            synchronized (Animator.this) {
-                running = false;
-                for (AnimatorListener listener : listeners)
-                    listener.onCancel();
+            if (startTime + duration > frameTime) {
+                if (updateListener != null) {
+                    float interpolation = (float) (frameTime - startTime) / duration;
+                    if (interpolator != null)
+                        interpolation = interpolator.getInterpolation(interpolation);
+                    updateListener.onUpdate(interpolation);
+                }
+                return true;
             }
+            if (updateListener != null)
+                updateListener.onUpdate(1);
+            running = false;
+            recordStats(false);
+            for (AnimatorListener listener : listeners)
+                listener.onEnd();
+            return false;
         }
-    };
+    }
 
     public void start() {
         synchronized (Animator.this) {
-            startTime = System.currentTimeMillis() + delay;
+            startTime = NOT_STARTED;
+            started = false;
             running = true;
+            frameRecorder = recordsFrames() ? AnimatorStats.newRecorder() : null;
             if (updateListener != null)
                 updateListener.onUpdate(0);
-            handler.postDelayed(startRunnable, delay);
+        }
+        FrameClock.getInstance().add(this);
+    }
+
+    /**
+     * Jumps to the end of the animation. Listeners are notified as if the animation finished on its own,
+     * so whatever waits for the end can settle right away. Frame stats count it as cancelled.
+     */
+    public void end() {
+        synchronized (Animator.this) {
+            if (!running)
+                return;
+            if (!started) {
+                started = true;
+                for (AnimatorListener listener : listeners)
+                    listener.onStart();
+                if (!running)
+                    return;
+            }
+            if (updateListener != null)
+                updateListener.onUpdate(1);
+            running = false;
+            recordStats(true);
+            for (AnimatorListener listener : listeners)
+                listener.onEnd();
         }
     }
 
@@ -97,10 +125,54 @@ public class Animator {
         synchronized (Animator.this) {
             if (!running)
                 return;
-            handler.post(cancelRunnable);
+            running = false;
+            recordStats(true);
+            for (AnimatorListener listener : listeners)
+                listener.onCancel();
         }
     }
 
+    /**
+     * @return false for animators which only drive other animators and don't have frames of their own
+     */
+    boolean recordsFrames() {
+        return true;
+    }
+
+    private void recordStats(boolean cancelled) {
+        if (frameRecorder == null)
+            return;
+        AnimatorStats.add(statsKey != null ? statsKey : getClass(), frameRecorder, duration, cancelled);
+        frameRecorder = null;
+    }
+
+    /**
+     * Sets the key frame stats of this animator are aggregated under. Animators without a key are
+     * aggregated under their class.
+     *
+     * @see AnimatorStats
+     */
+    public void setStatsKey(Object statsKey) {
+        this.statsKey = statsKey;
+    }
+
+    public Object getStatsKey() {
+        return statsKey;
+    }
+
+    /**
+     * Declares which view properties this animator changes, as a combination of PROPERTY_* flags. Used to
+     * decide if the animated view is worth a hardware layer. Animators which don't declare their properties
+     * are treated as changing all of them.
+     */
+    public void setAnimatedProperties(int animatedProperties) {
+        this.animatedProperties = animatedProperties;
+    }
+
+    public int getAnimatedProperties() {
+        return animatedProperties;
+    }
+
     public void setDuration(long duration) {
         this.duration = duration;
     }
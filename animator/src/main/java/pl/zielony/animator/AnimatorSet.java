@@ -33,4 +33,48 @@ public class AnimatorSet extends Animator {
     public void addAll(List<Animator> animators) {
         this.animators.addAll(animators);
     }
+
+    /**
+     * Ends the set and all of its animators. Animators which weren't started yet are started first.
+     */
+    @Override
+    public void end() {
+        super.end();
+        for (Animator a : animators)
+            a.end();
+    }
+
+    /**
+     * The set itself finishes in its first frame, after starting its animators, so it's running as long
+     * as any of its animators is running
+     */
+    @Override
+    public boolean isRunning() {
+        if (super.isRunning())
+            return true;
+        for (Animator a : animators) {
+            if (a.isRunning())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return properties declared by the set combined with properties of all of its animators
+     */
+    @Override
+    public int getAnimatedProperties() {
+        int properties = super.getAnimatedProperties();
+        if (properties != PROPERTY_UNKNOWN)
+            return properties;
+        properties = PROPERTY_NONE;
+        for (Animator a : animators)
+            properties |= a.getAnimatedProperties();
+        return properties;
+    }
+
+    @Override
+    boolean recordsFrames() {
+        return false;
+    }
 }
@@ -0,0 +1,71 @@
+package pl.zielony.animator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Opt-in frame statistics of animators. When enabled, each started animator records its frame intervals
+ * and adds them to the stats of its key when it ends or is cancelled (see
+ * {@link Animator#setStatsKey(Object)}). Animators started while stats are disabled don't record anything.
+ */
+public final class AnimatorStats {
+    private static final float DEFAULT_REFRESH_RATE = 60;
+
+    private static volatile boolean enabled = false;
+    private static volatile float frameInterval = 1000 / DEFAULT_REFRESH_RATE;
+    private static final Map<Object, FrameStats> stats = new HashMap<>();
+
+    private AnimatorStats() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        AnimatorStats.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets the display refresh rate late and dropped frames are measured against. Defaults to 60Hz.
+     */
+    public static void setRefreshRate(float refreshRate) {
+        frameInterval = 1000 / refreshRate;
+    }
+
+    public static float getRefreshRate() {
+        return 1000 / frameInterval;
+    }
+
+    /**
+     * @return stats of the key or null if no animator with this key was recorded
+     */
+    public static synchronized FrameStats getStats(Object key) {
+        FrameStats keyStats = stats.get(key);
+        return keyStats != null ? keyStats.copy() : null;
+    }
+
+    public static synchronized Map<Object, FrameStats> getAllStats() {
+        Map<Object, FrameStats> result = new HashMap<>();
+        for (Map.Entry<Object, FrameStats> entry : stats.entrySet())
+            result.put(entry.getKey(), entry.getValue().copy());
+        return result;
+    }
+
+    public static synchronized void reset() {
+        stats.clear();
+    }
+
+    static FrameRecorder newRecorder() {
+        return enabled ? new FrameRecorder(frameInterval) : null;
+    }
+
+    static synchronized void add(Object key, FrameRecorder recorder, long plannedDuration, boolean cancelled) {
+        FrameStats keyStats = stats.get(key);
+        if (keyStats == null) {
+            keyStats = new FrameStats();
+            stats.put(key, keyStats);
+        }
+        keyStats.add(recorder, plannedDuration, cancelled);
+    }
+}
@@ -0,0 +1,124 @@
+package pl.zielony.animator;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Process-wide frame driver. Ticks all running animators in a single vsync callback and stops
+ * scheduling callbacks when there's nothing to animate. Uses Choreographer on Jelly Bean and newer and
+ * a Handler posting at display rate on older devices.
+ */
+public class FrameClock {
+    private static final long FALLBACK_FRAME_DELAY = 16;
+
+    private static FrameClock instance;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Animator> animators = new ArrayList<>();
+    private final FrameScheduler scheduler;
+    private boolean scheduled = false;
+
+    private FrameClock() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            scheduler = new ChoreographerScheduler();
+        } else {
+            scheduler = new HandlerScheduler();
+        }
+    }
+
+    public static synchronized FrameClock getInstance() {
+        if (instance == null)
+            instance = new FrameClock();
+        return instance;
+    }
+
+    /**
+     * @return main thread handler shared by all animators
+     */
+    public Handler getHandler() {
+        return handler;
+    }
+
+    /**
+     * @return number of animators ticked by this clock
+     */
+    public int getAnimatorCount() {
+        return animators.size();
+    }
+
+    void add(final Animator animator) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    add(animator);
+                }
+            });
+            return;
+        }
+        if (animator.ticking)
+            return;
+        animator.ticking = true;
+        animators.add(animator);
+        if (!scheduled) {
+            scheduled = true;
+            scheduler.schedule();
+        }
+    }
+
+    void doFrame(long frameTime) {
+        scheduled = false;
+        int alive = 0;
+        // animators started during this frame (for example by an AnimatorSet) are appended and ticked in the same pass
+        for (int i = 0; i < animators.size(); i++) {
+            Animator animator = animators.get(i);
+            if (animator.doFrame(frameTime)) {
+                animators.set(alive++, animator);
+            } else {
+                animator.ticking = false;
+            }
+        }
+        for (int i = animators.size() - 1; i >= alive; i--)
+            animators.remove(i);
+        if (!animators.isEmpty()) {
+            scheduled = true;
+            scheduler.schedule();
+        }
+    }
+
+    private interface FrameScheduler {
+        void schedule();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class ChoreographerScheduler implements FrameScheduler, Choreographer.FrameCallback {
+        @Override
+        public void schedule() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            FrameClock.this.doFrame(frameTimeNanos / 1000000);
+        }
+    }
+
+    private class HandlerScheduler implements FrameScheduler, Runnable {
+        @Override
+        public void schedule() {
+            handler.postDelayed(this, FALLBACK_FRAME_DELAY);
+        }
+
+        @Override
+        public void run() {
+            doFrame(SystemClock.uptimeMillis());
+        }
+    }
+}
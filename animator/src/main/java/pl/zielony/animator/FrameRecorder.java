@@ -0,0 +1,36 @@
+package pl.zielony.animator;
+
+/**
+ * Collects frame intervals of one run of an animator. Used only on the main thread.
+ */
+class FrameRecorder {
+    private static final long NO_FRAME = -1;
+
+    private final float frameInterval;
+    private long firstFrameTime = NO_FRAME, lastFrameTime = NO_FRAME;
+    int frames, droppedFrames, lateFrames;
+    final int[] intervalHistogram = new int[FrameStats.getBucketBounds().length + 1];
+
+    FrameRecorder(float frameInterval) {
+        this.frameInterval = frameInterval;
+    }
+
+    void onFrame(long frameTime) {
+        frames++;
+        if (lastFrameTime != NO_FRAME) {
+            int intervalFrames = Math.max(1, Math.round((frameTime - lastFrameTime) / frameInterval));
+            if (intervalFrames > 1) {
+                lateFrames++;
+                droppedFrames += intervalFrames - 1;
+            }
+            intervalHistogram[FrameStats.bucketOf(intervalFrames)]++;
+        } else {
+            firstFrameTime = frameTime;
+        }
+        lastFrameTime = frameTime;
+    }
+
+    long getDuration() {
+        return firstFrameTime == NO_FRAME ? 0 : lastFrameTime - firstFrameTime;
+    }
+}
@@ -0,0 +1,128 @@
+package pl.zielony.animator;
+
+import java.util.Arrays;
+
+/**
+ * Frame timing of animations aggregated under one key. Frame intervals are counted in a histogram with
+ * buckets measured in display frames: up to 1, 2, 3, 5, 8 and more than 8 frames. A frame is late when it
+ * comes later than one refresh interval after the previous one and each missed vsync counts as a dropped
+ * frame. Returned objects are snapshots.
+ */
+public class FrameStats {
+    private static final int[] BUCKET_BOUNDS = {1, 2, 3, 5, 8};
+
+    private int animations, cancelled;
+    private int frames, droppedFrames, lateFrames;
+    private long plannedDuration, actualDuration;
+    private long maxOverrun;
+    private final int[] intervalHistogram = new int[BUCKET_BOUNDS.length + 1];
+
+    /**
+     * @return upper bounds of histogram buckets in display frames. The last bucket has no upper bound.
+     */
+    public static int[] getBucketBounds() {
+        return BUCKET_BOUNDS.clone();
+    }
+
+    static int bucketOf(int intervalFrames) {
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            if (intervalFrames <= BUCKET_BOUNDS[i])
+                return i;
+        }
+        return BUCKET_BOUNDS.length;
+    }
+
+    void add(FrameRecorder recorder, long plannedDuration, boolean cancelled) {
+        animations++;
+        if (cancelled)
+            this.cancelled++;
+        frames += recorder.frames;
+        droppedFrames += recorder.droppedFrames;
+        lateFrames += recorder.lateFrames;
+        for (int i = 0; i < intervalHistogram.length; i++)
+            intervalHistogram[i] += recorder.intervalHistogram[i];
+        if (!cancelled) {
+            long actualDuration = recorder.getDuration();
+            this.plannedDuration += plannedDuration;
+            this.actualDuration += actualDuration;
+            maxOverrun = Math.max(maxOverrun, actualDuration - plannedDuration);
+        }
+    }
+
+    public int getAnimations() {
+        return animations;
+    }
+
+    public int getCancelled() {
+        return cancelled;
+    }
+
+    public int getFrames() {
+        return frames;
+    }
+
+    public int getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public int getLateFrames() {
+        return lateFrames;
+    }
+
+    /**
+     * @return sum of planned durations of finished animations in milliseconds
+     */
+    public long getPlannedDuration() {
+        return plannedDuration;
+    }
+
+    /**
+     * @return sum of durations of finished animations from the first to the last frame in milliseconds
+     */
+    public long getActualDuration() {
+        return actualDuration;
+    }
+
+    /**
+     * @return the longest time a finished animation took over its planned duration in milliseconds
+     */
+    public long getMaxOverrun() {
+        return maxOverrun;
+    }
+
+    /**
+     * @return numbers of frame intervals in buckets described by {@link #getBucketBounds()}
+     */
+    public int[] getIntervalHistogram() {
+        return intervalHistogram.clone();
+    }
+
+    FrameStats copy() {
+        FrameStats copy = new FrameStats();
+        copy.animations = animations;
+        copy.cancelled = cancelled;
+        copy.frames = frames;
+        copy.droppedFrames = droppedFrames;
+        copy.lateFrames = lateFrames;
+        copy.plannedDuration = plannedDuration;
+        copy.actualDuration = actualDuration;
+        copy.maxOverrun = maxOverrun;
+        System.arraycopy(intervalHistogram, 0, copy.intervalHistogram, 0, intervalHistogram.length);
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameStats{" +
+                "animations=" + animations +
+                ", cancelled=" + cancelled +
+                ", frames=" + frames +
+                ", droppedFrames=" + droppedFrames +
+                ", lateFrames=" + lateFrames +
+                ", plannedDuration=" + plannedDuration +
+                ", actualDuration=" + actualDuration +
+                ", maxOverrun=" + maxOverrun +
+                ", intervalHistogram=" + Arrays.toString(intervalHistogram) +
+                '}';
+    }
+}
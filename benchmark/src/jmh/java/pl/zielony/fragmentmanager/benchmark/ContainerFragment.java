@@ -0,0 +1,22 @@
+package pl.zielony.fragmentmanager.benchmark;
+
+import android.view.View;
+import android.widget.FrameLayout;
+
+import pl.zielony.fragmentmanager.Fragment;
+
+/**
+ * Nested level of the benchmark tree. Hosts child fragments in {@link #CONTAINER_ID}.
+ */
+public class ContainerFragment extends Fragment {
+    public static final int CONTAINER_ID = 1;
+
+    @Override
+    protected View onCreateView() {
+        FrameLayout view = new FrameLayout(getActivity());
+        FrameLayout container = new FrameLayout(getActivity());
+        container.setId(CONTAINER_ID);
+        view.addView(container);
+        return view;
+    }
+}
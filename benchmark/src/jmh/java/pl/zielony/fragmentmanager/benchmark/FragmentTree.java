@@ -0,0 +1,113 @@
+package pl.zielony.fragmentmanager.benchmark;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import pl.zielony.fragmentmanager.Fragment;
+import pl.zielony.fragmentmanager.FragmentManager;
+import pl.zielony.fragmentmanager.FragmentRootView;
+import pl.zielony.fragmentmanager.ManagerBase;
+import pl.zielony.fragmentmanager.TransactionMode;
+
+import static pl.zielony.fragmentmanager.benchmark.ContainerFragment.CONTAINER_ID;
+
+/**
+ * A resumed fragment tree attached to a fake window. Container fragments are nested {@code depth} levels deep
+ * and leaf fragments are spread evenly over the levels, so the tree holds {@code size} fragments in total.
+ */
+class FragmentTree {
+    final Activity activity;
+    final FragmentManager manager;
+    // levels.get(0) is the activity's manager, the last one is the deepest container fragment
+    final List<ManagerBase> levels = new ArrayList<>();
+    // ids and tags of fragments leading to the last leaf of the deepest level
+    final int[] pathIds;
+    final String[] pathTags;
+
+    private FragmentTree(Activity activity, FragmentManager manager) {
+        this.activity = activity;
+        this.manager = manager;
+        levels.add(manager);
+        pathIds = null;
+        pathTags = null;
+    }
+
+    private FragmentTree(Activity activity, FragmentManager manager, int size, int depth) {
+        this.activity = activity;
+        this.manager = manager;
+        depth = Math.max(1, Math.min(depth, size));
+        pathIds = new int[depth];
+        pathTags = new String[depth];
+
+        ManagerBase parent = manager;
+        levels.add(manager);
+        for (int level = 1; level < depth; level++) {
+            ContainerFragment container = Fragment.instantiate(ContainerFragment.class, activity);
+            container.setTag("container" + level);
+            parent.add(container, CONTAINER_ID, TransactionMode.Join);
+            pathIds[level - 1] = container.getId();
+            pathTags[level - 1] = container.getTag();
+            levels.add(container);
+            parent = container;
+        }
+
+        // the deepest levels get the remainder, so the deepest one always has a leaf
+        int leaves = size - (depth - 1);
+        for (int level = 0; level < depth; level++) {
+            int count = leaves / depth + (level >= depth - leaves % depth ? 1 : 0);
+            for (int i = 0; i < count; i++) {
+                LeafFragment leaf = Fragment.instantiate(LeafFragment.class, activity);
+                leaf.setTag("leaf" + level + "_" + i);
+                levels.get(level).add(leaf, CONTAINER_ID, TransactionMode.Join);
+                if (level == depth - 1) {
+                    pathIds[depth - 1] = leaf.getId();
+                    pathTags[depth - 1] = leaf.getTag();
+                }
+            }
+        }
+        Looper.loop();
+    }
+
+    static FragmentTree create(int size, int depth) {
+        Activity activity = new Activity();
+        return new FragmentTree(activity, createManager(activity, null), size, depth);
+    }
+
+    /**
+     * Restores a saved tree in a new activity
+     */
+    static FragmentTree restore(Bundle state) {
+        Activity activity = new Activity();
+        FragmentManager manager = createManager(activity, state);
+        manager.restore(state);
+        Looper.loop();
+        return new FragmentTree(activity, manager);
+    }
+
+    private static FragmentManager createManager(Activity activity, Bundle state) {
+        FragmentManager manager = new FragmentManager(activity, state);
+        FragmentRootView rootView = new FragmentRootView(activity);
+        rootView.setId(CONTAINER_ID);
+        manager.setRootView(rootView);
+        activity.setContentView(rootView);
+        manager.start();
+        manager.resume();
+        Looper.loop();
+        return manager;
+    }
+
+    ManagerBase getDeepest() {
+        return levels.get(levels.size() - 1);
+    }
+
+    void destroy() {
+        manager.pause();
+        manager.stop();
+        manager.destroy();
+        Looper.loop();
+    }
+}
@@ -0,0 +1,27 @@
+package pl.zielony.fragmentmanager.benchmark;
+
+import android.app.Activity;
+import android.os.Looper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import pl.zielony.fragmentmanager.Fragment;
+
+@State(Scope.Thread)
+public class InstantiateBenchmark {
+    private Activity activity;
+
+    @Setup
+    public void setUp() {
+        Looper.prepareMainLooper();
+        activity = new Activity();
+    }
+
+    @Benchmark
+    public LeafFragment instantiate() {
+        return Fragment.instantiate(LeafFragment.class, activity);
+    }
+}
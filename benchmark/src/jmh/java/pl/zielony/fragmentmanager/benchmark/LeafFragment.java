@@ -0,0 +1,26 @@
+package pl.zielony.fragmentmanager.benchmark;
+
+import android.view.View;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import pl.zielony.fragmentmanager.Fragment;
+
+/**
+ * Screen-like fragment with a small view hierarchy, so saving view state has something to do
+ */
+public class LeafFragment extends Fragment {
+    private static final int VIEWS = 8;
+
+    @Override
+    protected View onCreateView() {
+        FrameLayout view = new FrameLayout(getActivity());
+        for (int i = 0; i < VIEWS; i++) {
+            TextView child = new TextView(getActivity());
+            child.setId(100 + i);
+            child.setText("item " + i);
+            view.addView(child);
+        }
+        return view;
+    }
+}
@@ -0,0 +1,34 @@
+package pl.zielony.fragmentmanager.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import pl.zielony.fragmentmanager.Fragment;
+import pl.zielony.fragmentmanager.ManagerBase;
+
+/**
+ * Looks up the last leaf of the deepest level, one level at a time
+ */
+public class LookupBenchmark {
+
+    @Benchmark
+    public Fragment getFragmentById(TreeState state) {
+        ManagerBase manager = state.tree.manager;
+        Fragment fragment = null;
+        for (int id : state.tree.pathIds) {
+            fragment = manager.getFragment(id);
+            manager = fragment;
+        }
+        return fragment;
+    }
+
+    @Benchmark
+    public Fragment getFragmentByTag(TreeState state) {
+        ManagerBase manager = state.tree.manager;
+        Fragment fragment = null;
+        for (String tag : state.tree.pathTags) {
+            fragment = manager.getFragment(tag);
+            manager = fragment;
+        }
+        return fragment;
+    }
+}
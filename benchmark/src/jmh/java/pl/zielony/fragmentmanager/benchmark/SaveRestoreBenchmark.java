@@ -0,0 +1,24 @@
+package pl.zielony.fragmentmanager.benchmark;
+
+import android.os.Bundle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+public class SaveRestoreBenchmark {
+
+    @Benchmark
+    public Bundle save(TreeState state) {
+        Bundle bundle = new Bundle();
+        state.tree.manager.save(bundle);
+        return bundle;
+    }
+
+    @Benchmark
+    public FragmentTree saveRestore(TreeState state) {
+        Bundle bundle = new Bundle();
+        state.tree.manager.save(bundle);
+        FragmentTree restored = FragmentTree.restore(bundle);
+        restored.destroy();
+        return restored;
+    }
+}
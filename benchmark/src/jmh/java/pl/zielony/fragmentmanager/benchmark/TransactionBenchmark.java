@@ -0,0 +1,42 @@
+package pl.zielony.fragmentmanager.benchmark;
+
+import android.os.Looper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import pl.zielony.fragmentmanager.FragmentTransaction;
+import pl.zielony.fragmentmanager.TransactionMode;
+
+import static pl.zielony.fragmentmanager.benchmark.ContainerFragment.CONTAINER_ID;
+
+/**
+ * Pushes a fragment to the deepest level and pops it. Each operation includes the frames of the default
+ * animations, run on the fake clock.
+ */
+public class TransactionBenchmark {
+
+    @Benchmark
+    public boolean executeUndo(TreeState state) {
+        FragmentTransaction transaction = new FragmentTransaction(state.tree.getDeepest(), TransactionMode.Push);
+        transaction.add(LeafFragment.class, CONTAINER_ID);
+        transaction.execute();
+        Looper.loop();
+        boolean back = state.tree.getDeepest().back();
+        Looper.loop();
+        return back;
+    }
+
+    @Benchmark
+    public boolean executeBackTraverse(TreeState state) {
+        state.tree.getDeepest().add(LeafFragment.class, CONTAINER_ID, TransactionMode.Push);
+        Looper.loop();
+        boolean back = state.tree.manager.backTraverse();
+        Looper.loop();
+        return back;
+    }
+
+    @Benchmark
+    public boolean hasBack(TreeState state) {
+        return state.tree.manager.hasBack();
+    }
+}
@@ -0,0 +1,40 @@
+package pl.zielony.fragmentmanager.benchmark;
+
+import android.os.Looper;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+@State(Scope.Thread)
+public class TreeState {
+    @Param({"1", "10", "100", "500"})
+    public int size;
+
+    @Param({"1", "2", "4", "8"})
+    public int depth;
+
+    FragmentTree tree;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Looper.prepareMainLooper();
+        tree = FragmentTree.create(size, depth);
+    }
+
+    /**
+     * The fake main thread is the thread running the benchmark
+     */
+    @Setup(Level.Iteration)
+    public void prepareLooper() {
+        Looper.prepareMainLooper();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        tree.destroy();
+    }
+}
@@ -0,0 +1,13 @@
+package android.animation;
+
+public class ArgbEvaluator {
+    public Object evaluate(float fraction, Object startValue, Object endValue) {
+        int start = (Integer) startValue;
+        int end = (Integer) endValue;
+        int a = (int) ((start >>> 24) + fraction * ((end >>> 24) - (start >>> 24)));
+        int r = (int) ((start >> 16 & 0xff) + fraction * ((end >> 16 & 0xff) - (start >> 16 & 0xff)));
+        int g = (int) ((start >> 8 & 0xff) + fraction * ((end >> 8 & 0xff) - (start >> 8 & 0xff)));
+        int b = (int) ((start & 0xff) + fraction * ((end & 0xff) - (start & 0xff)));
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+}
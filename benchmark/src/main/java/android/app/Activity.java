@@ -0,0 +1,136 @@
+package android.app;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Display;
+import android.view.KeyEvent;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.Window;
+import android.view.WindowManager;
+
+/**
+ * Fake activity with a window. Lifecycle callbacks are not driven by anything - call them directly.
+ */
+public class Activity extends Context {
+    private final Window window = new Window(this);
+    private final WindowManager windowManager = new WindowManager() {
+        private final Display display = new Display();
+
+        @Override
+        public Display getDefaultDisplay() {
+            return display;
+        }
+    };
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean finishing = false;
+
+    @Override
+    public Object getSystemService(String name) {
+        if (WINDOW_SERVICE.equals(name))
+            return windowManager;
+        if (LAYOUT_INFLATER_SERVICE.equals(name))
+            return getLayoutInflater();
+        return super.getSystemService(name);
+    }
+
+    public LayoutInflater getLayoutInflater() {
+        return LayoutInflater.from(this);
+    }
+
+    public Window getWindow() {
+        return window;
+    }
+
+    public WindowManager getWindowManager() {
+        return windowManager;
+    }
+
+    public void setContentView(int layoutResID) {
+        setContentView(getLayoutInflater().inflate(layoutResID, null, false));
+    }
+
+    public void setContentView(View view) {
+        window.setContentView(view);
+    }
+
+    public void setContentView(View view, ViewGroup.LayoutParams params) {
+        view.setLayoutParams(params);
+        window.setContentView(view);
+    }
+
+    public void addContentView(View view, ViewGroup.LayoutParams params) {
+        view.setLayoutParams(params);
+        window.addContentView(view);
+    }
+
+    public void runOnUiThread(Runnable action) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            action.run();
+        } else {
+            handler.post(action);
+        }
+    }
+
+    protected void onCreate(Bundle savedInstanceState) {
+    }
+
+    protected void onStart() {
+    }
+
+    protected void onResume() {
+    }
+
+    protected void onPause() {
+    }
+
+    protected void onStop() {
+    }
+
+    public boolean isFinishing() {
+        return finishing;
+    }
+
+    public void finish() {
+        finishing = true;
+    }
+
+    public boolean isTaskRoot() {
+        return true;
+    }
+
+    protected void onDestroy() {
+    }
+
+    protected void onSaveInstanceState(Bundle outState) {
+    }
+
+    protected void onRestoreInstanceState(Bundle savedInstanceState) {
+    }
+
+    protected void onNewIntent(Intent intent) {
+    }
+
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+    }
+
+    public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+    }
+
+    public void onBackPressed() {
+    }
+
+    public boolean dispatchKeyEvent(KeyEvent event) {
+        return false;
+    }
+
+    public void onLowMemory() {
+    }
+
+    public void onTrimMemory(int level) {
+    }
+}
@@ -0,0 +1,51 @@
+package android.content;
+
+import android.content.res.Resources;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+public class Context {
+    public static final String WINDOW_SERVICE = "window";
+    public static final String LAYOUT_INFLATER_SERVICE = "layout_inflater";
+
+    private final Resources resources = new Resources();
+    private File cacheDir;
+
+    public Object getSystemService(String name) {
+        return null;
+    }
+
+    public synchronized File getCacheDir() {
+        if (cacheDir == null) {
+            try {
+                cacheDir = Files.createTempDirectory("cache").toFile();
+                cacheDir.deleteOnExit();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return cacheDir;
+    }
+
+    public Resources getResources() {
+        return resources;
+    }
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public ClassLoader getClassLoader() {
+        return getClass().getClassLoader();
+    }
+
+    public final String getString(int resId) {
+        return getResources().getString(resId);
+    }
+
+    public final String getString(int resId, Object... formatArgs) {
+        return getResources().getString(resId, formatArgs);
+    }
+}
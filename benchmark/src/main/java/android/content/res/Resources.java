@@ -0,0 +1,43 @@
+package android.content.res;
+
+import android.util.DisplayMetrics;
+
+/**
+ * Fake resources. There are no resource tables, so strings are empty and dimensions are 0.
+ */
+public class Resources {
+    public static class NotFoundException extends RuntimeException {
+        public NotFoundException() {
+        }
+
+        public NotFoundException(String name) {
+            super(name);
+        }
+    }
+
+    private final DisplayMetrics metrics = new DisplayMetrics();
+
+    public String getString(int id) {
+        return "";
+    }
+
+    public String getString(int id, Object... formatArgs) {
+        return "";
+    }
+
+    public float getDimension(int id) {
+        return 0;
+    }
+
+    public int getDimensionPixelOffset(int id) {
+        return 0;
+    }
+
+    public int getDimensionPixelSize(int id) {
+        return 0;
+    }
+
+    public DisplayMetrics getDisplayMetrics() {
+        return metrics;
+    }
+}
@@ -0,0 +1,23 @@
+package android.graphics;
+
+public final class Bitmap {
+    public enum Config {ARGB_8888}
+
+    private final int width, height;
+
+    private Bitmap(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public static Bitmap createBitmap(int width, int height, Config config) {
+        return new Bitmap(width, height);
+    }
+
+    public int getByteCount() {
+        return width * height * 4;
+    }
+
+    public void recycle() {
+    }
+}
@@ -0,0 +1,47 @@
+package android.graphics;
+
+/**
+ * Fake canvas. Keeps the save count, doesn't draw.
+ */
+public class Canvas {
+    public static final int ALL_SAVE_FLAG = 31;
+
+    private int saveCount = 1;
+
+    public int save() {
+        return saveCount++;
+    }
+
+    public int saveLayerAlpha(float left, float top, float right, float bottom, int alpha, int saveFlags) {
+        return save();
+    }
+
+    public void restore() {
+        if (saveCount > 1)
+            saveCount--;
+    }
+
+    public void restoreToCount(int count) {
+        saveCount = Math.max(1, count);
+    }
+
+    public void translate(float dx, float dy) {
+    }
+
+    public void scale(float sx, float sy) {
+    }
+
+    public boolean clipRect(Rect rect) {
+        return !rect.isEmpty();
+    }
+
+    public boolean clipRect(float left, float top, float right, float bottom) {
+        return left < right && top < bottom;
+    }
+
+    public void drawText(String text, float x, float y, Paint paint) {
+    }
+
+    public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+    }
+}
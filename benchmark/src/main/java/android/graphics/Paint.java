@@ -0,0 +1,37 @@
+package android.graphics;
+
+public class Paint {
+    public static final int ANTI_ALIAS_FLAG = 1;
+
+    private int color = Color.BLACK;
+    private float textSize = 12;
+
+    public Paint() {
+    }
+
+    public Paint(int flags) {
+    }
+
+    public void setTextSize(float textSize) {
+        this.textSize = textSize;
+    }
+
+    public float getTextSize() {
+        return textSize;
+    }
+
+    public void setColor(int color) {
+        this.color = color;
+    }
+
+    public int getColor() {
+        return color;
+    }
+
+    public void setAlpha(int alpha) {
+        color = (color & 0xffffff) | (alpha << 24);
+    }
+
+    public void setShadowLayer(float radius, float dx, float dy, int shadowColor) {
+    }
+}
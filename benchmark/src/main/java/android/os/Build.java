@@ -0,0 +1,12 @@
+package android.os;
+
+public class Build {
+    public static class VERSION {
+        public static final int SDK_INT = VERSION_CODES.N_MR1;
+    }
+
+    public static class VERSION_CODES {
+        public static final int GINGERBREAD_MR1 = 10, HONEYCOMB = 11, ICE_CREAM_SANDWICH = 14, JELLY_BEAN = 16,
+                JELLY_BEAN_MR1 = 17, JELLY_BEAN_MR2 = 18, KITKAT = 19, LOLLIPOP = 21, M = 23, N = 24, N_MR1 = 25;
+    }
+}
@@ -0,0 +1,240 @@
+package android.os;
+
+import android.util.SparseArray;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fake bundle backed by a HashMap. Values are not copied.
+ */
+public final class Bundle implements Parcelable, Cloneable {
+    public static final Parcelable.Creator<Bundle> CREATOR = null;
+
+    private final HashMap<String, Object> map;
+
+    public Bundle() {
+        map = new HashMap<>();
+    }
+
+    public Bundle(Bundle bundle) {
+        map = new HashMap<>(bundle.map);
+    }
+
+    public void setClassLoader(ClassLoader loader) {
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    public boolean containsKey(String key) {
+        return map.containsKey(key);
+    }
+
+    public Object get(String key) {
+        return map.get(key);
+    }
+
+    public void remove(String key) {
+        map.remove(key);
+    }
+
+    public void putAll(Bundle bundle) {
+        map.putAll(bundle.map);
+    }
+
+    public Set<String> keySet() {
+        return map.keySet();
+    }
+
+    public void putBoolean(String key, boolean value) {
+        map.put(key, value);
+    }
+
+    public void putInt(String key, int value) {
+        map.put(key, value);
+    }
+
+    public void putLong(String key, long value) {
+        map.put(key, value);
+    }
+
+    public void putFloat(String key, float value) {
+        map.put(key, value);
+    }
+
+    public void putString(String key, String value) {
+        map.put(key, value);
+    }
+
+    public void putIntArray(String key, int[] value) {
+        map.put(key, value);
+    }
+
+    public void putByteArray(String key, byte[] value) {
+        map.put(key, value);
+    }
+
+    public void putStringArray(String key, String[] value) {
+        map.put(key, value);
+    }
+
+    public void putBundle(String key, Bundle value) {
+        map.put(key, value);
+    }
+
+    public void putParcelable(String key, Parcelable value) {
+        map.put(key, value);
+    }
+
+    public void putParcelableArrayList(String key, ArrayList<? extends Parcelable> value) {
+        map.put(key, value);
+    }
+
+    public void putSparseParcelableArray(String key, SparseArray<? extends Parcelable> value) {
+        map.put(key, value);
+    }
+
+    public void putSerializable(String key, Serializable value) {
+        map.put(key, value);
+    }
+
+    public boolean getBoolean(String key) {
+        return getBoolean(key, false);
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Object value = map.get(key);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+
+    public int getInt(String key) {
+        return getInt(key, 0);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Object value = map.get(key);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    public long getLong(String key) {
+        Object value = map.get(key);
+        return value instanceof Long ? (Long) value : 0;
+    }
+
+    public float getFloat(String key) {
+        Object value = map.get(key);
+        return value instanceof Float ? (Float) value : 0;
+    }
+
+    public String getString(String key) {
+        Object value = map.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    public int[] getIntArray(String key) {
+        Object value = map.get(key);
+        return value instanceof int[] ? (int[]) value : null;
+    }
+
+    public byte[] getByteArray(String key) {
+        Object value = map.get(key);
+        return value instanceof byte[] ? (byte[]) value : null;
+    }
+
+    public String[] getStringArray(String key) {
+        Object value = map.get(key);
+        return value instanceof String[] ? (String[]) value : null;
+    }
+
+    public Bundle getBundle(String key) {
+        Object value = map.get(key);
+        return value instanceof Bundle ? (Bundle) value : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Parcelable> T getParcelable(String key) {
+        return (T) map.get(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Parcelable> ArrayList<T> getParcelableArrayList(String key) {
+        Object value = map.get(key);
+        return value instanceof ArrayList ? (ArrayList<T>) value : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Parcelable> SparseArray<T> getSparseParcelableArray(String key) {
+        Object value = map.get(key);
+        return value instanceof SparseArray ? (SparseArray<T>) value : null;
+    }
+
+    public Serializable getSerializable(String key) {
+        Object value = map.get(key);
+        return value instanceof Serializable ? (Serializable) value : null;
+    }
+
+    @Override
+    public Object clone() {
+        return new Bundle(this);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel parcel, int flags) {
+        parcel.writeBundle(this);
+    }
+
+    /**
+     * Rough size of this bundle in a parcel
+     */
+    int estimateSize() {
+        int size = 12;
+        for (Map.Entry<String, Object> entry : map.entrySet())
+            size += 8 + entry.getKey().length() * 2 + estimateSize(entry.getValue());
+        return size;
+    }
+
+    private static int estimateSize(Object value) {
+        if (value == null)
+            return 0;
+        if (value instanceof Bundle)
+            return ((Bundle) value).estimateSize();
+        if (value instanceof String)
+            return ((String) value).length() * 2;
+        if (value instanceof int[])
+            return ((int[]) value).length * 4;
+        if (value instanceof byte[])
+            return ((byte[]) value).length;
+        if (value instanceof ArrayList) {
+            int size = 4;
+            for (Object item : (ArrayList<?>) value)
+                size += estimateSize(item);
+            return size;
+        }
+        if (value instanceof SparseArray) {
+            SparseArray<?> array = (SparseArray<?>) value;
+            int size = 4;
+            for (int i = 0; i < array.size(); i++)
+                size += 4 + estimateSize(array.valueAt(i));
+            return size;
+        }
+        return 8;
+    }
+}
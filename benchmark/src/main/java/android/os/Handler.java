@@ -0,0 +1,41 @@
+package android.os;
+
+public class Handler {
+    private final Looper looper;
+
+    public Handler() {
+        this(Looper.myLooper());
+    }
+
+    public Handler(Looper looper) {
+        if (looper == null)
+            throw new RuntimeException("Can't create handler inside thread that has not called Looper.prepare()");
+        this.looper = looper;
+    }
+
+    public boolean post(Runnable r) {
+        return postAtTime(r, SystemClock.uptimeMillis());
+    }
+
+    public boolean postDelayed(Runnable r, long delayMillis) {
+        return postAtTime(r, SystemClock.uptimeMillis() + Math.max(0, delayMillis));
+    }
+
+    public boolean postAtTime(Runnable r, long uptimeMillis) {
+        looper.getQueue().enqueue(this, r, uptimeMillis);
+        return true;
+    }
+
+    public boolean postAtFrontOfQueue(Runnable r) {
+        looper.getQueue().enqueue(this, r, Long.MIN_VALUE);
+        return true;
+    }
+
+    public void removeCallbacks(Runnable r) {
+        looper.getQueue().remove(this, r);
+    }
+
+    public Looper getLooper() {
+        return looper;
+    }
+}
@@ -0,0 +1,49 @@
+package android.os;
+
+/**
+ * Fake main looper. The main thread is the thread which called {@link #prepareMainLooper()} most recently.
+ * {@link #loop()} doesn't block - it processes messages until the queue is idle and returns.
+ */
+public final class Looper {
+    private static final Looper main = new Looper();
+
+    private final MessageQueue queue = new MessageQueue();
+    private volatile Thread thread = Thread.currentThread();
+
+    private Looper() {
+    }
+
+    public static void prepareMainLooper() {
+        main.thread = Thread.currentThread();
+    }
+
+    public static void prepare() {
+    }
+
+    public static Looper getMainLooper() {
+        return main;
+    }
+
+    public static Looper myLooper() {
+        return main.thread == Thread.currentThread() ? main : null;
+    }
+
+    public static MessageQueue myQueue() {
+        return main.queue;
+    }
+
+    /**
+     * Runs messages, frames and idle handlers until there's nothing left to do
+     */
+    public static void loop() {
+        main.queue.runUntilIdle();
+    }
+
+    public Thread getThread() {
+        return thread;
+    }
+
+    public MessageQueue getQueue() {
+        return queue;
+    }
+}
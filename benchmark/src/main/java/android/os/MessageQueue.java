@@ -0,0 +1,108 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public final class MessageQueue {
+    private static final int MAX_STEPS = 10000000;
+
+    public interface IdleHandler {
+        boolean queueIdle();
+    }
+
+    private static class Message implements Comparable<Message> {
+        final Handler handler;
+        final Runnable callback;
+        final long when;
+        final long sequence;
+
+        Message(Handler handler, Runnable callback, long when, long sequence) {
+            this.handler = handler;
+            this.callback = callback;
+            this.when = when;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Message other) {
+            if (when != other.when)
+                return when < other.when ? -1 : 1;
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final PriorityQueue<Message> messages = new PriorityQueue<>();
+    private final List<IdleHandler> idleHandlers = new ArrayList<>();
+    private long sequence = 0;
+
+    MessageQueue() {
+    }
+
+    public synchronized void addIdleHandler(IdleHandler handler) {
+        idleHandlers.add(handler);
+    }
+
+    public synchronized void removeIdleHandler(IdleHandler handler) {
+        idleHandlers.remove(handler);
+    }
+
+    synchronized void enqueue(Handler handler, Runnable callback, long when) {
+        messages.add(new Message(handler, callback, when, sequence++));
+    }
+
+    synchronized void remove(Handler handler, Runnable callback) {
+        Iterator<Message> iterator = messages.iterator();
+        while (iterator.hasNext()) {
+            Message message = iterator.next();
+            if (message.handler == handler && message.callback == callback)
+                iterator.remove();
+        }
+    }
+
+    private synchronized Message next(long now) {
+        Message message = messages.peek();
+        if (message == null || message.when > now)
+            return null;
+        return messages.poll();
+    }
+
+    private synchronized Long nextTime() {
+        Message message = messages.peek();
+        return message != null ? message.when : null;
+    }
+
+    private boolean runIdleHandlers() {
+        List<IdleHandler> handlers;
+        synchronized (this) {
+            if (idleHandlers.isEmpty())
+                return false;
+            handlers = new ArrayList<>(idleHandlers);
+        }
+        for (IdleHandler handler : handlers) {
+            if (!handler.queueIdle())
+                removeIdleHandler(handler);
+        }
+        return true;
+    }
+
+    void runUntilIdle() {
+        for (int step = 0; step < MAX_STEPS; step++) {
+            Message message = next(SystemClock.uptimeMillis());
+            if (message != null) {
+                message.callback.run();
+                continue;
+            }
+            boolean idleHandlersRan = runIdleHandlers();
+            Long nextTime = nextTime();
+            if (nextTime == null) {
+                if (!idleHandlersRan)
+                    return;
+                continue;
+            }
+            SystemClock.advanceTo(nextTime);
+        }
+        throw new IllegalStateException("Main looper didn't become idle");
+    }
+}
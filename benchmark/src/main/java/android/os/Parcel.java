@@ -0,0 +1,65 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fake parcel. Keeps written bundles in memory and estimates their size. Marshalled data can only be
+ * unmarshalled in the same process.
+ */
+public final class Parcel {
+    private static final List<List<Bundle>> marshalled = new ArrayList<>();
+
+    private List<Bundle> bundles = new ArrayList<>();
+    private int position = 0;
+    private int dataSize = 0;
+
+    private Parcel() {
+    }
+
+    public static Parcel obtain() {
+        return new Parcel();
+    }
+
+    public void recycle() {
+        bundles = new ArrayList<>();
+        position = 0;
+        dataSize = 0;
+    }
+
+    public void writeBundle(Bundle bundle) {
+        bundles.add(bundle != null ? new Bundle(bundle) : null);
+        dataSize += bundle != null ? bundle.estimateSize() : 4;
+    }
+
+    public Bundle readBundle() {
+        return bundles.get(position++);
+    }
+
+    public Bundle readBundle(ClassLoader loader) {
+        return readBundle();
+    }
+
+    public int dataSize() {
+        return dataSize;
+    }
+
+    public void setDataPosition(int position) {
+        this.position = position;
+    }
+
+    public byte[] marshall() {
+        synchronized (marshalled) {
+            marshalled.add(bundles);
+            int index = marshalled.size() - 1;
+            return new byte[]{(byte) (index >>> 24), (byte) (index >>> 16), (byte) (index >>> 8), (byte) index};
+        }
+    }
+
+    public void unmarshall(byte[] data, int offset, int length) {
+        int index = (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16 | (data[offset + 2] & 0xff) << 8 | data[offset + 3] & 0xff;
+        synchronized (marshalled) {
+            bundles = marshalled.get(index);
+        }
+    }
+}
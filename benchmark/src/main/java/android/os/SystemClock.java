@@ -0,0 +1,29 @@
+package android.os;
+
+/**
+ * Fake clock. Time doesn't flow on its own - it's advanced by the main looper when it runs out of due
+ * messages, so delays and animations don't take real time.
+ */
+public final class SystemClock {
+    private static volatile long uptime = 0;
+
+    private SystemClock() {
+    }
+
+    public static long uptimeMillis() {
+        return uptime;
+    }
+
+    public static long elapsedRealtime() {
+        return uptime;
+    }
+
+    public static long elapsedRealtimeNanos() {
+        return uptime * 1000000;
+    }
+
+    static void advanceTo(long time) {
+        if (time > uptime)
+            uptime = time;
+    }
+}
@@ -0,0 +1,18 @@
+package android.support.v4.view;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+public abstract class PagerAdapter {
+    public Object instantiateItem(ViewGroup container, int position) {
+        throw new UnsupportedOperationException("Required method instantiateItem was not overridden");
+    }
+
+    public void destroyItem(ViewGroup container, int position, Object object) {
+        throw new UnsupportedOperationException("Required method destroyItem was not overridden");
+    }
+
+    public abstract boolean isViewFromObject(View view, Object object);
+
+    public abstract int getCount();
+}
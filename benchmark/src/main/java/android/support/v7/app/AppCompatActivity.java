@@ -0,0 +1,6 @@
+package android.support.v7.app;
+
+import android.app.Activity;
+
+public class AppCompatActivity extends Activity {
+}
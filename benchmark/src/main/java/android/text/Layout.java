@@ -0,0 +1,31 @@
+package android.text;
+
+import android.graphics.Canvas;
+
+/**
+ * Fake text layout. Has a size and a paint, doesn't draw.
+ */
+public abstract class Layout {
+    private final TextPaint paint;
+    private final int width;
+
+    protected Layout(CharSequence text, TextPaint paint, int width) {
+        this.paint = paint;
+        this.width = width;
+    }
+
+    public void draw(Canvas canvas) {
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return 0;
+    }
+
+    public TextPaint getPaint() {
+        return paint;
+    }
+}
@@ -0,0 +1,6 @@
+package android.util;
+
+public class DisplayMetrics {
+    public int widthPixels = 1080, heightPixels = 1920;
+    public float density = 3;
+}
@@ -0,0 +1,37 @@
+package android.util;
+
+public class SparseIntArray {
+    private final SparseArray<Integer> array = new SparseArray<>();
+
+    public int get(int key) {
+        return get(key, 0);
+    }
+
+    public int get(int key, int valueIfKeyNotFound) {
+        return array.get(key, valueIfKeyNotFound);
+    }
+
+    public void put(int key, int value) {
+        array.put(key, value);
+    }
+
+    public void delete(int key) {
+        array.delete(key);
+    }
+
+    public int size() {
+        return array.size();
+    }
+
+    public int keyAt(int index) {
+        return array.keyAt(index);
+    }
+
+    public int valueAt(int index) {
+        return array.valueAt(index);
+    }
+
+    public void clear() {
+        array.clear();
+    }
+}
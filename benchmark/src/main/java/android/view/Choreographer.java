@@ -0,0 +1,72 @@
+package android.view;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+
+/**
+ * Fake choreographer. Frames are scheduled on the main looper at the next 16ms boundary of the fake clock.
+ * Each frame runs frame callbacks first, then view traversals.
+ */
+public final class Choreographer {
+    private static final long FRAME_INTERVAL = 16;
+    private static final Choreographer instance = new Choreographer();
+
+    public interface FrameCallback {
+        void doFrame(long frameTimeNanos);
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private ArrayList<FrameCallback> callbacks = new ArrayList<>();
+    private ArrayList<Runnable> traversals = new ArrayList<>();
+    private boolean frameScheduled;
+    private final Runnable frame = new Runnable() {
+        @Override
+        public void run() {
+            doFrame();
+        }
+    };
+
+    private Choreographer() {
+    }
+
+    public static Choreographer getInstance() {
+        return instance;
+    }
+
+    public void postFrameCallback(FrameCallback callback) {
+        callbacks.add(callback);
+        scheduleFrame();
+    }
+
+    public void removeFrameCallback(FrameCallback callback) {
+        callbacks.remove(callback);
+    }
+
+    void postTraversal(Runnable traversal) {
+        traversals.add(traversal);
+        scheduleFrame();
+    }
+
+    private void scheduleFrame() {
+        if (frameScheduled)
+            return;
+        frameScheduled = true;
+        handler.postAtTime(frame, (SystemClock.uptimeMillis() / FRAME_INTERVAL + 1) * FRAME_INTERVAL);
+    }
+
+    private void doFrame() {
+        frameScheduled = false;
+        long frameTimeNanos = SystemClock.uptimeMillis() * 1000000;
+        ArrayList<FrameCallback> frameCallbacks = callbacks;
+        callbacks = new ArrayList<>();
+        for (FrameCallback callback : frameCallbacks)
+            callback.doFrame(frameTimeNanos);
+        ArrayList<Runnable> frameTraversals = traversals;
+        traversals = new ArrayList<>();
+        for (Runnable traversal : frameTraversals)
+            traversal.run();
+    }
+}
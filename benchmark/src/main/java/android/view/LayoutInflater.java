@@ -0,0 +1,34 @@
+package android.view;
+
+import android.content.Context;
+
+/**
+ * Fake inflater. There are no layout resources outside of an apk, so views have to be built in code.
+ */
+public class LayoutInflater {
+    private final Context context;
+
+    protected LayoutInflater(Context context) {
+        this.context = context;
+    }
+
+    public static LayoutInflater from(Context context) {
+        return new LayoutInflater(context);
+    }
+
+    public Context getContext() {
+        return context;
+    }
+
+    public LayoutInflater cloneInContext(Context newContext) {
+        return new LayoutInflater(newContext);
+    }
+
+    public View inflate(int resource, ViewGroup root) {
+        return inflate(resource, root, root != null);
+    }
+
+    public View inflate(int resource, ViewGroup root, boolean attachToRoot) {
+        throw new UnsupportedOperationException("Layout resources are not available, build the view in code");
+    }
+}
@@ -0,0 +1,543 @@
+package android.view;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Parcelable;
+import android.util.AttributeSet;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fake view. Keeps the tree, attachment, layout bounds and transformation properties. There's no measuring
+ * and no drawing - a parent lays its children out with its own bounds.
+ */
+public class View {
+    public static final int NO_ID = -1;
+    public static final int VISIBLE = 0, INVISIBLE = 4, GONE = 8;
+    public static final int LAYER_TYPE_NONE = 0, LAYER_TYPE_SOFTWARE = 1, LAYER_TYPE_HARDWARE = 2;
+
+    public interface OnClickListener {
+        void onClick(View v);
+    }
+
+    public interface OnAttachStateChangeListener {
+        void onViewAttachedToWindow(View v);
+
+        void onViewDetachedFromWindow(View v);
+    }
+
+    public interface OnLayoutChangeListener {
+        void onLayoutChange(View v, int left, int top, int right, int bottom, int oldLeft, int oldTop, int oldRight, int oldBottom);
+    }
+
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final Context context;
+    ViewParent parent;
+    Window window;
+    private ViewTreeObserver floatingObserver;
+    private ViewGroup.LayoutParams layoutParams;
+    private List<OnAttachStateChangeListener> attachListeners;
+    private List<OnLayoutChangeListener> layoutListeners;
+    private OnClickListener clickListener;
+
+    private int id = NO_ID;
+    private Object tag;
+    private int visibility = VISIBLE;
+    private int left, top, right, bottom;
+    private boolean layoutRequested = true;
+    private float alpha = 1, scaleX = 1, scaleY = 1, translationX, translationY, pivotX, pivotY, rotation;
+    private Rect clipBounds;
+    private int layerType = LAYER_TYPE_NONE;
+
+    public View(Context context) {
+        this.context = context;
+    }
+
+    public View(Context context, AttributeSet attrs) {
+        this(context);
+    }
+
+    public View(Context context, AttributeSet attrs, int defStyleAttr) {
+        this(context);
+    }
+
+    public View(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
+        this(context);
+    }
+
+    public static View inflate(Context context, int resource, ViewGroup root) {
+        return LayoutInflater.from(context).inflate(resource, root);
+    }
+
+    public Context getContext() {
+        return context;
+    }
+
+    public Resources getResources() {
+        return context.getResources();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public Object getTag() {
+        return tag;
+    }
+
+    public void setTag(Object tag) {
+        this.tag = tag;
+    }
+
+    public ViewGroup.LayoutParams getLayoutParams() {
+        return layoutParams;
+    }
+
+    public void setLayoutParams(ViewGroup.LayoutParams params) {
+        layoutParams = params;
+        requestLayout();
+    }
+
+    public final View findViewById(int id) {
+        if (id == NO_ID)
+            return null;
+        return findViewTraversal(id);
+    }
+
+    public final View findViewWithTag(Object tag) {
+        if (tag == null)
+            return null;
+        return findViewWithTagTraversal(tag);
+    }
+
+    View findViewTraversal(int id) {
+        return id == this.id ? this : null;
+    }
+
+    View findViewWithTagTraversal(Object tag) {
+        return tag.equals(this.tag) ? this : null;
+    }
+
+    public ViewParent getParent() {
+        return parent;
+    }
+
+    public View getRootView() {
+        View view = this;
+        while (view.parent instanceof View)
+            view = (View) view.parent;
+        return view;
+    }
+
+    // attachment
+
+    public boolean isAttachedToWindow() {
+        return window != null;
+    }
+
+    public ViewTreeObserver getViewTreeObserver() {
+        if (window != null)
+            return window.getViewTreeObserver();
+        if (floatingObserver == null)
+            floatingObserver = new ViewTreeObserver();
+        return floatingObserver;
+    }
+
+    void dispatchAttachedToWindow(Window window) {
+        this.window = window;
+        if (floatingObserver != null) {
+            window.getViewTreeObserver().merge(floatingObserver);
+            floatingObserver = null;
+        }
+        onAttachedToWindow();
+        if (attachListeners != null) {
+            for (OnAttachStateChangeListener listener : new ArrayList<>(attachListeners))
+                listener.onViewAttachedToWindow(this);
+        }
+    }
+
+    void dispatchDetachedFromWindow() {
+        onDetachedFromWindow();
+        if (attachListeners != null) {
+            for (OnAttachStateChangeListener listener : new ArrayList<>(attachListeners))
+                listener.onViewDetachedFromWindow(this);
+        }
+        window = null;
+    }
+
+    protected void onAttachedToWindow() {
+    }
+
+    protected void onDetachedFromWindow() {
+    }
+
+    public void addOnAttachStateChangeListener(OnAttachStateChangeListener listener) {
+        if (attachListeners == null)
+            attachListeners = new ArrayList<>();
+        attachListeners.add(listener);
+    }
+
+    public void removeOnAttachStateChangeListener(OnAttachStateChangeListener listener) {
+        if (attachListeners != null)
+            attachListeners.remove(listener);
+    }
+
+    // layout
+
+    public final int getLeft() {
+        return left;
+    }
+
+    public final int getTop() {
+        return top;
+    }
+
+    public final int getRight() {
+        return right;
+    }
+
+    public final int getBottom() {
+        return bottom;
+    }
+
+    public final int getWidth() {
+        return right - left;
+    }
+
+    public final int getHeight() {
+        return bottom - top;
+    }
+
+    public final int getMeasuredWidth() {
+        return getWidth();
+    }
+
+    public final int getMeasuredHeight() {
+        return getHeight();
+    }
+
+    public void layout(int l, int t, int r, int b) {
+        int oldLeft = left, oldTop = top, oldRight = right, oldBottom = bottom;
+        boolean changed = l != left || t != top || r != right || b != bottom;
+        left = l;
+        top = t;
+        right = r;
+        bottom = b;
+        if (changed)
+            onSizeChanged(r - l, b - t, oldRight - oldLeft, oldBottom - oldTop);
+        onLayout(changed, l, t, r, b);
+        layoutRequested = false;
+        if (layoutListeners != null) {
+            for (OnLayoutChangeListener listener : new ArrayList<>(layoutListeners))
+                listener.onLayoutChange(this, l, t, r, b, oldLeft, oldTop, oldRight, oldBottom);
+        }
+    }
+
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+    }
+
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+    }
+
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+    }
+
+    public void requestLayout() {
+        layoutRequested = true;
+        if (parent != null) {
+            if (!parent.isLayoutRequested())
+                parent.requestLayout();
+        } else if (window != null) {
+            window.scheduleTraversal();
+        }
+    }
+
+    public boolean isLayoutRequested() {
+        return layoutRequested;
+    }
+
+    public void addOnLayoutChangeListener(OnLayoutChangeListener listener) {
+        if (layoutListeners == null)
+            layoutListeners = new ArrayList<>();
+        layoutListeners.add(listener);
+    }
+
+    public void removeOnLayoutChangeListener(OnLayoutChangeListener listener) {
+        if (layoutListeners != null)
+            layoutListeners.remove(listener);
+    }
+
+    public void getLocationInWindow(int[] location) {
+        float x = 0, y = 0;
+        View view = this;
+        while (view != null) {
+            x += view.left + view.translationX;
+            y += view.top + view.translationY;
+            view = view.parent instanceof View ? (View) view.parent : null;
+        }
+        location[0] = (int) x;
+        location[1] = (int) y;
+    }
+
+    public void getLocationOnScreen(int[] location) {
+        getLocationInWindow(location);
+    }
+
+    public void getHitRect(Rect outRect) {
+        outRect.set(left, top, right, bottom);
+        outRect.offset((int) translationX, (int) translationY);
+    }
+
+    public void getDrawingRect(Rect outRect) {
+        outRect.set(0, 0, getWidth(), getHeight());
+    }
+
+    // visibility and transformations
+
+    public int getVisibility() {
+        return visibility;
+    }
+
+    public void setVisibility(int visibility) {
+        if (this.visibility == visibility)
+            return;
+        boolean gone = this.visibility == GONE || visibility == GONE;
+        this.visibility = visibility;
+        if (gone)
+            requestLayout();
+        invalidate();
+    }
+
+    public boolean isShown() {
+        View view = this;
+        while (view != null) {
+            if (view.visibility != VISIBLE)
+                return false;
+            if (view.parent == null)
+                return view.window != null;
+            view = view.parent instanceof View ? (View) view.parent : null;
+        }
+        return false;
+    }
+
+    public float getAlpha() {
+        return alpha;
+    }
+
+    public void setAlpha(float alpha) {
+        this.alpha = alpha;
+        invalidate();
+    }
+
+    public float getScaleX() {
+        return scaleX;
+    }
+
+    public void setScaleX(float scaleX) {
+        this.scaleX = scaleX;
+        invalidate();
+    }
+
+    public float getScaleY() {
+        return scaleY;
+    }
+
+    public void setScaleY(float scaleY) {
+        this.scaleY = scaleY;
+        invalidate();
+    }
+
+    public float getTranslationX() {
+        return translationX;
+    }
+
+    public void setTranslationX(float translationX) {
+        this.translationX = translationX;
+        invalidate();
+    }
+
+    public float getTranslationY() {
+        return translationY;
+    }
+
+    public void setTranslationY(float translationY) {
+        this.translationY = translationY;
+        invalidate();
+    }
+
+    public float getPivotX() {
+        return pivotX;
+    }
+
+    public void setPivotX(float pivotX) {
+        this.pivotX = pivotX;
+    }
+
+    public float getPivotY() {
+        return pivotY;
+    }
+
+    public void setPivotY(float pivotY) {
+        this.pivotY = pivotY;
+    }
+
+    public float getRotation() {
+        return rotation;
+    }
+
+    public void setRotation(float rotation) {
+        this.rotation = rotation;
+        invalidate();
+    }
+
+    public Rect getClipBounds() {
+        return clipBounds != null ? new Rect(clipBounds) : null;
+    }
+
+    public void setClipBounds(Rect clipBounds) {
+        this.clipBounds = clipBounds != null ? new Rect(clipBounds) : null;
+        invalidate();
+    }
+
+    public Matrix getMatrix() {
+        return new Matrix();
+    }
+
+    public void setLayerType(int layerType, Paint paint) {
+        this.layerType = layerType;
+    }
+
+    public int getLayerType() {
+        return layerType;
+    }
+
+    public void buildLayer() {
+    }
+
+    public void setDrawingCacheEnabled(boolean enabled) {
+    }
+
+    public boolean hasOverlappingRendering() {
+        return true;
+    }
+
+    // drawing
+
+    public void invalidate() {
+        if (window != null)
+            window.scheduleTraversal();
+    }
+
+    public void invalidate(int l, int t, int r, int b) {
+        invalidate();
+    }
+
+    public void invalidate(Rect dirty) {
+        invalidate();
+    }
+
+    public void postInvalidateOnAnimation() {
+        invalidate();
+    }
+
+    public long getDrawingTime() {
+        return android.os.SystemClock.uptimeMillis();
+    }
+
+    public void draw(Canvas canvas) {
+        onDraw(canvas);
+        dispatchDraw(canvas);
+    }
+
+    protected void onDraw(Canvas canvas) {
+    }
+
+    protected void dispatchDraw(Canvas canvas) {
+    }
+
+    public Display getDisplay() {
+        return window != null ? new Display() : null;
+    }
+
+    // events
+
+    public boolean post(Runnable action) {
+        return handler.post(action);
+    }
+
+    public boolean postOnAnimation(final Runnable action) {
+        Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                action.run();
+            }
+        });
+        return true;
+    }
+
+    public void setOnClickListener(OnClickListener listener) {
+        clickListener = listener;
+    }
+
+    public boolean performClick() {
+        if (clickListener == null)
+            return false;
+        clickListener.onClick(this);
+        return true;
+    }
+
+    public boolean hasFocus() {
+        return false;
+    }
+
+    public boolean dispatchTouchEvent(MotionEvent event) {
+        return false;
+    }
+
+    public boolean dispatchKeyEvent(KeyEvent event) {
+        return false;
+    }
+
+    // state
+
+    public void saveHierarchyState(SparseArray<Parcelable> container) {
+        dispatchSaveInstanceState(container);
+    }
+
+    public void restoreHierarchyState(SparseArray<Parcelable> container) {
+        dispatchRestoreInstanceState(container);
+    }
+
+    protected void dispatchSaveInstanceState(SparseArray<Parcelable> container) {
+        if (id != NO_ID)
+            container.put(id, onSaveInstanceState());
+    }
+
+    protected void dispatchRestoreInstanceState(SparseArray<Parcelable> container) {
+        if (id != NO_ID) {
+            Parcelable state = container.get(id);
+            if (state != null)
+                onRestoreInstanceState(state);
+        }
+    }
+
+    protected Parcelable onSaveInstanceState() {
+        return AbsSavedState.EMPTY_STATE;
+    }
+
+    protected void onRestoreInstanceState(Parcelable state) {
+    }
+}
@@ -0,0 +1,207 @@
+package android.view;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Parcelable;
+import android.util.AttributeSet;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+
+public abstract class ViewGroup extends View implements ViewParent {
+
+    public static class LayoutParams {
+        public static final int MATCH_PARENT = -1, WRAP_CONTENT = -2;
+
+        public int width, height;
+
+        public LayoutParams(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    public interface OnHierarchyChangeListener {
+        void onChildViewAdded(View parent, View child);
+
+        void onChildViewRemoved(View parent, View child);
+    }
+
+    private final ArrayList<View> children = new ArrayList<>();
+    protected OnHierarchyChangeListener mOnHierarchyChangeListener;
+    private ViewOverlay overlay;
+
+    public ViewGroup(Context context) {
+        super(context);
+    }
+
+    public ViewGroup(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public ViewGroup(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+    }
+
+    public ViewGroup(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
+        super(context, attrs, defStyleAttr, defStyleRes);
+    }
+
+    public int getChildCount() {
+        return children.size();
+    }
+
+    public View getChildAt(int index) {
+        return index >= 0 && index < children.size() ? children.get(index) : null;
+    }
+
+    public int indexOfChild(View child) {
+        return children.indexOf(child);
+    }
+
+    public void addView(View child) {
+        addView(child, -1);
+    }
+
+    public void addView(View child, int index) {
+        if (child.getParent() != null)
+            throw new IllegalStateException("The specified child already has a parent. You must call removeView() on the child's parent first.");
+        if (index < 0)
+            index = children.size();
+        children.add(index, child);
+        child.parent = this;
+        if (window != null)
+            child.dispatchAttachedToWindow(window);
+        onViewAdded(child);
+        if (mOnHierarchyChangeListener != null)
+            mOnHierarchyChangeListener.onChildViewAdded(this, child);
+        requestLayout();
+        invalidate();
+    }
+
+    public void addView(View child, LayoutParams params) {
+        addView(child, -1, params);
+    }
+
+    public void addView(View child, int index, LayoutParams params) {
+        child.setLayoutParams(params);
+        addView(child, index);
+    }
+
+    public void removeView(View view) {
+        int index = children.indexOf(view);
+        if (index >= 0)
+            removeViewAt(index);
+    }
+
+    public void removeViewAt(int index) {
+        View child = children.remove(index);
+        if (child.window != null)
+            child.dispatchDetachedFromWindow();
+        child.parent = null;
+        onViewRemoved(child);
+        if (mOnHierarchyChangeListener != null)
+            mOnHierarchyChangeListener.onChildViewRemoved(this, child);
+        requestLayout();
+        invalidate();
+    }
+
+    public void removeAllViews() {
+        while (!children.isEmpty())
+            removeViewAt(children.size() - 1);
+    }
+
+    public void onViewAdded(View child) {
+    }
+
+    public void onViewRemoved(View child) {
+    }
+
+    public void setOnHierarchyChangeListener(OnHierarchyChangeListener listener) {
+        mOnHierarchyChangeListener = listener;
+    }
+
+    public void setClipChildren(boolean clipChildren) {
+    }
+
+    public ViewOverlay getOverlay() {
+        if (overlay == null)
+            overlay = new ViewOverlay();
+        return overlay;
+    }
+
+    public void invalidateChild(View child, Rect dirty) {
+        invalidate();
+    }
+
+    @Override
+    View findViewTraversal(int id) {
+        if (id == getId())
+            return this;
+        for (int i = 0; i < children.size(); i++) {
+            View view = children.get(i).findViewTraversal(id);
+            if (view != null)
+                return view;
+        }
+        return null;
+    }
+
+    @Override
+    View findViewWithTagTraversal(Object tag) {
+        if (tag.equals(getTag()))
+            return this;
+        for (int i = 0; i < children.size(); i++) {
+            View view = children.get(i).findViewWithTagTraversal(tag);
+            if (view != null)
+                return view;
+        }
+        return null;
+    }
+
+    @Override
+    void dispatchAttachedToWindow(Window window) {
+        super.dispatchAttachedToWindow(window);
+        for (int i = 0; i < children.size(); i++)
+            children.get(i).dispatchAttachedToWindow(window);
+    }
+
+    @Override
+    void dispatchDetachedFromWindow() {
+        for (int i = 0; i < children.size(); i++)
+            children.get(i).dispatchDetachedFromWindow();
+        super.dispatchDetachedFromWindow();
+    }
+
+    @Override
+    protected abstract void onLayout(boolean changed, int left, int top, int right, int bottom);
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        long drawingTime = getDrawingTime();
+        for (int i = 0; i < children.size(); i++) {
+            View child = children.get(i);
+            if (child.getVisibility() == VISIBLE)
+                drawChild(canvas, child, drawingTime);
+        }
+    }
+
+    protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        child.draw(canvas);
+        return true;
+    }
+
+    @Override
+    protected void dispatchSaveInstanceState(SparseArray<Parcelable> container) {
+        super.dispatchSaveInstanceState(container);
+        for (int i = 0; i < children.size(); i++)
+            children.get(i).dispatchSaveInstanceState(container);
+    }
+
+    @Override
+    protected void dispatchRestoreInstanceState(SparseArray<Parcelable> container) {
+        super.dispatchRestoreInstanceState(container);
+        for (int i = 0; i < children.size(); i++)
+            children.get(i).dispatchRestoreInstanceState(container);
+    }
+}
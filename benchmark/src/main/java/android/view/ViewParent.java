@@ -0,0 +1,9 @@
+package android.view;
+
+public interface ViewParent {
+    ViewParent getParent();
+
+    void requestLayout();
+
+    boolean isLayoutRequested();
+}
@@ -0,0 +1,63 @@
+package android.view;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class ViewTreeObserver {
+    public interface OnPreDrawListener {
+        boolean onPreDraw();
+    }
+
+    public interface OnGlobalLayoutListener {
+        void onGlobalLayout();
+    }
+
+    private final List<OnPreDrawListener> preDrawListeners = new ArrayList<>();
+    private final List<OnGlobalLayoutListener> globalLayoutListeners = new ArrayList<>();
+
+    ViewTreeObserver() {
+    }
+
+    public void addOnPreDrawListener(OnPreDrawListener listener) {
+        preDrawListeners.add(listener);
+    }
+
+    public void removeOnPreDrawListener(OnPreDrawListener listener) {
+        preDrawListeners.remove(listener);
+    }
+
+    public void addOnGlobalLayoutListener(OnGlobalLayoutListener listener) {
+        globalLayoutListeners.add(listener);
+    }
+
+    public void removeOnGlobalLayoutListener(OnGlobalLayoutListener listener) {
+        globalLayoutListeners.remove(listener);
+    }
+
+    public boolean isAlive() {
+        return true;
+    }
+
+    void merge(ViewTreeObserver observer) {
+        preDrawListeners.addAll(observer.preDrawListeners);
+        globalLayoutListeners.addAll(observer.globalLayoutListeners);
+        observer.preDrawListeners.clear();
+        observer.globalLayoutListeners.clear();
+    }
+
+    void dispatchOnGlobalLayout() {
+        if (globalLayoutListeners.isEmpty())
+            return;
+        for (OnGlobalLayoutListener listener : new ArrayList<>(globalLayoutListeners))
+            listener.onGlobalLayout();
+    }
+
+    boolean dispatchOnPreDraw() {
+        if (preDrawListeners.isEmpty())
+            return false;
+        boolean cancelDraw = false;
+        for (OnPreDrawListener listener : new ArrayList<>(preDrawListeners))
+            cancelDraw |= !listener.onPreDraw();
+        return cancelDraw;
+    }
+}
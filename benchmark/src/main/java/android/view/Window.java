@@ -0,0 +1,60 @@
+package android.view;
+
+import android.content.Context;
+import android.widget.FrameLayout;
+
+/**
+ * Fake window. Owns an attached decor view and lays it out in a traversal scheduled on the next frame.
+ */
+public class Window {
+    private static final int WIDTH = 1080, HEIGHT = 1920;
+
+    private final ViewTreeObserver observer = new ViewTreeObserver();
+    private final FrameLayout decor;
+    private boolean traversalScheduled;
+    private final Runnable traversal = new Runnable() {
+        @Override
+        public void run() {
+            performTraversal();
+        }
+    };
+
+    public Window(Context context) {
+        decor = new FrameLayout(context);
+        ((View) decor).dispatchAttachedToWindow(this);
+    }
+
+    public View getDecorView() {
+        return decor;
+    }
+
+    public void setContentView(View view) {
+        decor.removeAllViews();
+        decor.addView(view);
+    }
+
+    public void addContentView(View view) {
+        decor.addView(view);
+    }
+
+    ViewTreeObserver getViewTreeObserver() {
+        return observer;
+    }
+
+    void scheduleTraversal() {
+        if (traversalScheduled)
+            return;
+        traversalScheduled = true;
+        Choreographer.getInstance().postTraversal(traversal);
+    }
+
+    private void performTraversal() {
+        traversalScheduled = false;
+        if (decor.isLayoutRequested()) {
+            decor.layout(0, 0, WIDTH, HEIGHT);
+            observer.dispatchOnGlobalLayout();
+        }
+        if (observer.dispatchOnPreDraw())
+            scheduleTraversal();
+    }
+}
@@ -0,0 +1,18 @@
+package android.view.animation;
+
+public class AccelerateInterpolator implements Interpolator {
+    private final float factor;
+
+    public AccelerateInterpolator() {
+        this(1);
+    }
+
+    public AccelerateInterpolator(float factor) {
+        this.factor = factor;
+    }
+
+    @Override
+    public float getInterpolation(float input) {
+        return factor == 1 ? input * input : (float) Math.pow(input, factor * 2);
+    }
+}
@@ -0,0 +1,18 @@
+package android.view.animation;
+
+public class DecelerateInterpolator implements Interpolator {
+    private final float factor;
+
+    public DecelerateInterpolator() {
+        this(1);
+    }
+
+    public DecelerateInterpolator(float factor) {
+        this.factor = factor;
+    }
+
+    @Override
+    public float getInterpolation(float input) {
+        return factor == 1 ? 1 - (1 - input) * (1 - input) : (float) (1 - Math.pow(1 - input, factor * 2));
+    }
+}
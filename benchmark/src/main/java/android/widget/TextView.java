@@ -0,0 +1,79 @@
+package android.widget;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.text.Layout;
+import android.text.TextPaint;
+import android.view.View;
+
+/**
+ * Fake text view. Keeps text, size and color. There's no text layout.
+ */
+public class TextView extends View {
+    private final TextPaint paint = new TextPaint();
+    private CharSequence text = "";
+
+    public TextView(Context context) {
+        super(context);
+        paint.setColor(Color.BLACK);
+    }
+
+    public CharSequence getText() {
+        return text;
+    }
+
+    public void setText(CharSequence text) {
+        this.text = text != null ? text : "";
+        requestLayout();
+    }
+
+    public int getCurrentTextColor() {
+        return paint.getColor();
+    }
+
+    public void setTextColor(int color) {
+        paint.setColor(color);
+        invalidate();
+    }
+
+    public float getTextSize() {
+        return paint.getTextSize();
+    }
+
+    public void setTextSize(int unit, float size) {
+        paint.setTextSize(size);
+        requestLayout();
+    }
+
+    public TextPaint getPaint() {
+        return paint;
+    }
+
+    public Layout getLayout() {
+        return null;
+    }
+
+    public int getTotalPaddingLeft() {
+        return 0;
+    }
+
+    public int getTotalPaddingTop() {
+        return 0;
+    }
+
+    public int getCompoundPaddingLeft() {
+        return 0;
+    }
+
+    public int getExtendedPaddingTop() {
+        return 0;
+    }
+
+    public int getScrollX() {
+        return 0;
+    }
+
+    public int getScrollY() {
+        return 0;
+    }
+}
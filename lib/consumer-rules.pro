@@ -0,0 +1,19 @@
+# Rules applied to apps using the fragment manager.
+
+# Fragment classes are saved and restored by name. Generated state binders and factories are found by
+# the fragment's name with a suffix, so both sides have to keep their names.
+-keepnames class * extends pl.zielony.fragmentmanager.Fragment
+-keepclassmembers class * extends pl.zielony.fragmentmanager.Fragment {
+    <init>();
+}
+-keep class **_StateBinder implements pl.zielony.fragmentmanager.StateBinder {
+    <init>();
+}
+-keep class **_Factory implements pl.zielony.fragmentmanager.FragmentFactory {
+    <init>();
+}
+
+# @State fields of fragments without a generated binder are saved with reflection
+-keepclassmembers class * extends pl.zielony.fragmentmanager.Fragment {
+    @pl.zielony.fragmentmanager.State <fields>;
+}
@@ -0,0 +1,125 @@
+package pl.zielony.fragmentmanager;
+
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static android.view.View.NO_ID;
+
+/**
+ * Indexes active fragment states by fragment's id, fragment's tag and container's id and tag. Each key can
+ * point to more than one state (for example fragments stacked in the same container). The first added
+ * state is returned, just like a linear scan over the active states would return it.
+ */
+class ActiveStateIndex {
+    private final SparseArray<List<FragmentState>> byId = new SparseArray<>();
+    private final Map<String, List<FragmentState>> byTag = new HashMap<>();
+    private final SparseArray<List<FragmentState>> byLayoutId = new SparseArray<>();
+    private final Map<String, List<FragmentState>> byContainerTag = new HashMap<>();
+
+    void add(FragmentState state) {
+        Fragment fragment = state.getFragment();
+        put(byId, fragment.getId(), state);
+        if (fragment.getTag() != null)
+            put(byTag, fragment.getTag(), state);
+        if (state.layoutId != NO_ID)
+            put(byLayoutId, state.layoutId, state);
+        if (state.tag != null)
+            put(byContainerTag, state.tag, state);
+    }
+
+    void remove(FragmentState state) {
+        Fragment fragment = state.getFragment();
+        remove(byId, fragment.getId(), state);
+        if (fragment.getTag() != null)
+            remove(byTag, fragment.getTag(), state);
+        if (state.layoutId != NO_ID)
+            remove(byLayoutId, state.layoutId, state);
+        if (state.tag != null)
+            remove(byContainerTag, state.tag, state);
+    }
+
+    void updateTag(FragmentState state, String oldTag, String newTag) {
+        if (oldTag != null)
+            remove(byTag, oldTag, state);
+        if (newTag != null)
+            put(byTag, newTag, state);
+    }
+
+    void clear() {
+        byId.clear();
+        byTag.clear();
+        byLayoutId.clear();
+        byContainerTag.clear();
+    }
+
+    FragmentState getById(int id) {
+        return first(byId.get(id));
+    }
+
+    FragmentState getByTag(String tag) {
+        return first(byTag.get(tag));
+    }
+
+    FragmentState getByFragment(Fragment fragment) {
+        List<FragmentState> states = byId.get(fragment.getId());
+        if (states == null)
+            return null;
+        for (int i = 0; i < states.size(); i++) {
+            if (states.get(i).getFragment() == fragment)
+                return states.get(i);
+        }
+        return null;
+    }
+
+    FragmentState getByContainer(int layoutId, String tag) {
+        if (layoutId != NO_ID)
+            return first(byLayoutId.get(layoutId));
+        if (tag != null)
+            return first(byContainerTag.get(tag));
+        return null;
+    }
+
+    private static FragmentState first(List<FragmentState> states) {
+        return states == null || states.isEmpty() ? null : states.get(0);
+    }
+
+    private static void put(SparseArray<List<FragmentState>> index, int key, FragmentState state) {
+        List<FragmentState> states = index.get(key);
+        if (states == null) {
+            states = new ArrayList<>(1);
+            index.put(key, states);
+        }
+        states.add(state);
+    }
+
+    private static void remove(SparseArray<List<FragmentState>> index, int key, FragmentState state) {
+        List<FragmentState> states = index.get(key);
+        if (states == null)
+            return;
+        states.remove(state);
+        if (states.isEmpty())
+            index.remove(key);
+    }
+
+    private static void put(Map<String, List<FragmentState>> index, String key, FragmentState state) {
+        List<FragmentState> states = index.get(key);
+        if (states == null) {
+            states = new ArrayList<>(1);
+            index.put(key, states);
+        }
+        states.add(state);
+    }
+
+    private static void remove(Map<String, List<FragmentState>> index, String key, FragmentState state) {
+        List<FragmentState> states = index.get(key);
+        if (states == null)
+            return;
+        states.remove(state);
+        if (states.isEmpty())
+            index.remove(key);
+    }
+}
@@ -0,0 +1,72 @@
+package pl.zielony.fragmentmanager;
+
+import android.app.Activity;
+
+import java.util.List;
+
+/**
+ * Inflates views of not yet instantiated fragments in parallel on background threads and calls back on
+ * the main thread when all of them are ready. Views which cannot be inflated in background are inflated on
+ * the main thread. All methods have to be called on the main thread.
+ */
+final class AsyncInflater {
+    private final List<FragmentState> states;
+    private final Fragment[] fragments;
+    private final boolean[] ready;
+    private int remaining;
+    private boolean cancelled = false;
+
+    private AsyncInflater(List<FragmentState> states) {
+        this.states = states;
+        fragments = new Fragment[states.size()];
+        ready = new boolean[states.size()];
+        remaining = states.size();
+    }
+
+    static AsyncInflater inflate(List<FragmentState> states, final Activity activity, final Runnable onReady) {
+        final AsyncInflater inflater = new AsyncInflater(states);
+        for (int i = 0; i < states.size(); i++) {
+            final int index = i;
+            final Fragment fragment = states.get(i).prepareFragment();
+            inflater.fragments[i] = fragment;
+            InflationExecutor.execute(() -> {
+                boolean inflated;
+                try {
+                    fragment.createView(activity);
+                    inflated = true;
+                } catch (RuntimeException e) {
+                    inflated = false;
+                }
+                final boolean inflatedInBackground = inflated;
+                ManagerBase.getHandler().post(() -> {
+                    if (inflater.cancelled)
+                        return;
+                    if (!inflatedInBackground)
+                        fragment.createView(activity);
+                    inflater.ready[index] = true;
+                    if (--inflater.remaining == 0)
+                        onReady.run();
+                });
+            });
+        }
+        return inflater;
+    }
+
+    boolean isDone() {
+        return remaining == 0;
+    }
+
+    /**
+     * Stops waiting for views. The callback won't be called. Fragments which aren't inflated yet are dropped
+     * from their states, so their views are inflated on the main thread when the fragments are needed.
+     */
+    void cancel() {
+        if (cancelled)
+            return;
+        cancelled = true;
+        for (int i = 0; i < fragments.length; i++) {
+            if (!ready[i])
+                states.get(i).discardPreparedFragment(fragments[i]);
+        }
+    }
+}
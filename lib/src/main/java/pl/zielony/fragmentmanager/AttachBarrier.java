@@ -0,0 +1,140 @@
+package pl.zielony.fragmentmanager;
+
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Waits on the main thread until all fragments started by a transaction are attached and laid out,
+ * then runs the given action before the next draw. Gives up waiting after a timeout or when a fragment
+ * is removed before it had a chance to attach.
+ */
+class AttachBarrier implements FragmentRootView.OnAttachStateChangeListener, FragmentRootView.OnLayoutChangeListener, ViewTreeObserver.OnPreDrawListener {
+    static final long TIMEOUT = 1000;
+
+    private final ManagerBase manager;
+    private final Runnable action;
+    private final List<Fragment> pending = new ArrayList<>();
+    private final List<Fragment> watched = new ArrayList<>();
+    private boolean done = false;
+
+    private Runnable timeoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            finish();
+        }
+    };
+
+    AttachBarrier(ManagerBase manager, Runnable action) {
+        this.manager = manager;
+        this.action = action;
+    }
+
+    /**
+     * Starts waiting for given fragments. Runs the action immediately if there's nothing to wait for.
+     *
+     * @param fragments fragments added by the transaction
+     */
+    void await(List<Fragment> fragments) {
+        for (Fragment fragment : fragments) {
+            if (isReady(fragment))
+                continue;
+            pending.add(fragment);
+            watched.add(fragment);
+            FragmentRootView rootView = fragment.getRootView();
+            rootView.addOnAttachStateChangeListener(this);
+            rootView.addOnLayoutChangeListener(this);
+        }
+        if (pending.isEmpty()) {
+            finish();
+            return;
+        }
+        manager.attachBarriers.add(this);
+        ManagerBase.getHandler().postDelayed(timeoutRunnable, TIMEOUT);
+    }
+
+    private static boolean isReady(Fragment fragment) {
+        return fragment.isAttached() && fragment.getRootView().isLaidOut();
+    }
+
+    @Override
+    public void onViewAttachedToWindow(View v) {
+        check(v);
+    }
+
+    @Override
+    public void onViewDetachedFromWindow(View v) {
+    }
+
+    @Override
+    public void onLayoutChange(View v, int left, int top, int right, int bottom, int oldLeft, int oldTop, int oldRight, int oldBottom) {
+        check(v);
+    }
+
+    private void check(View v) {
+        for (int i = pending.size() - 1; i >= 0; i--) {
+            Fragment fragment = pending.get(i);
+            if (fragment.getRootView() != v)
+                continue;
+            if (!isReady(fragment))
+                return;
+            pending.remove(i);
+            if (pending.isEmpty())
+                finishBeforeDraw();
+            return;
+        }
+    }
+
+    /**
+     * Called by the manager when a fragment is removed. The barrier stops waiting for that fragment.
+     */
+    void onFragmentRemoved(Fragment fragment) {
+        if (!pending.remove(fragment))
+            return;
+        if (pending.isEmpty())
+            finish();
+    }
+
+    /**
+     * Layout listeners are being dispatched right now, so the listeners cannot be removed here. The action
+     * is run after the layout pass, but before anything gets drawn.
+     */
+    private void finishBeforeDraw() {
+        ViewTreeObserver observer = manager.getRootView().getViewTreeObserver();
+        if (observer.isAlive()) {
+            observer.addOnPreDrawListener(this);
+        } else {
+            ManagerBase.getHandler().post(timeoutRunnable);
+        }
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        finish();
+        return true;
+    }
+
+    /**
+     * Stops waiting and runs the action now, if it didn't run yet
+     */
+    void finish() {
+        if (done)
+            return;
+        done = true;
+        ManagerBase.getHandler().removeCallbacks(timeoutRunnable);
+        ViewTreeObserver observer = manager.getRootView().getViewTreeObserver();
+        if (observer.isAlive())
+            observer.removeOnPreDrawListener(this);
+        for (Fragment fragment : watched) {
+            FragmentRootView rootView = fragment.getRootView();
+            rootView.removeOnAttachStateChangeListener(this);
+            rootView.removeOnLayoutChangeListener(this);
+        }
+        pending.clear();
+        watched.clear();
+        manager.attachBarriers.remove(this);
+        action.run();
+    }
+}
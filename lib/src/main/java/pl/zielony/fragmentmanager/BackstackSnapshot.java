@@ -0,0 +1,86 @@
+package pl.zielony.fragmentmanager;
+
+import android.os.Bundle;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Flat encoding of a backstack. Each transaction is written to one int array as its mode, number of changes,
+ * number of shared elements and its changes. A change is the index of its state shifted left by one with the
+ * change type in the lowest bit. Shared elements of all transactions are saved to one list of bundles.
+ */
+final class BackstackSnapshot {
+    private static final int HEADER_SIZE = 3;
+
+    private final IdentityHashMap<FragmentState, Integer> indices = new IdentityHashMap<>();
+    final List<FragmentState> states = new ArrayList<>();
+    final ArrayList<Bundle> sharedElements = new ArrayList<>();
+    final int[] transactions;
+
+    BackstackSnapshot(List<FragmentTransaction> backstack) {
+        int size = 0;
+        for (FragmentTransaction transaction : backstack)
+            size += HEADER_SIZE + transaction.getChanges().size();
+        transactions = new int[size];
+
+        int offset = 0;
+        for (FragmentTransaction transaction : backstack) {
+            List<StateChange> changes = transaction.getChanges();
+            List<SharedElement> transactionSharedElements = transaction.getSharedElements();
+            transactions[offset++] = transaction.getMode().ordinal();
+            transactions[offset++] = changes.size();
+            transactions[offset++] = transactionSharedElements.size();
+            for (int i = 0; i < changes.size(); i++) {
+                StateChange change = changes.get(i);
+                transactions[offset++] = add(change.getState()) << 1 | change.getChange().ordinal();
+            }
+            for (int i = 0; i < transactionSharedElements.size(); i++)
+                sharedElements.add(FragmentTransaction.saveSharedElement(transactionSharedElements.get(i)));
+        }
+    }
+
+    /**
+     * @return index of the state in {@link #states} or -1 if the state is not used by the backstack
+     */
+    int indexOf(FragmentState state) {
+        Integer index = indices.get(state);
+        return index != null ? index : -1;
+    }
+
+    private int add(FragmentState state) {
+        Integer index = indices.get(state);
+        if (index == null) {
+            index = states.size();
+            indices.put(state, index);
+            states.add(state);
+        }
+        return index;
+    }
+
+    static void decode(ManagerBase manager, int[] transactions, List<Bundle> sharedElements, List<FragmentState> states) {
+        if (transactions == null || sharedElements == null)
+            throw new IllegalStateException("Cannot restore backstack, because some of restore data is missing");
+
+        TransactionMode[] modes = TransactionMode.values();
+        StateChange.Change[] changeTypes = StateChange.Change.values();
+        int sharedElementIndex = 0;
+        int offset = 0;
+        while (offset < transactions.length) {
+            FragmentTransaction transaction = new FragmentTransaction(manager, modes[transactions[offset++]]);
+            int changeCount = transactions[offset++];
+            int sharedElementCount = transactions[offset++];
+            for (int i = 0; i < changeCount; i++) {
+                int change = transactions[offset++];
+                transaction.addStateChange(states.get(change >>> 1), changeTypes[change & 1]);
+            }
+            for (int i = 0; i < sharedElementCount; i++) {
+                SharedElement sharedElement = FragmentTransaction.restoreSharedElement(sharedElements.get(sharedElementIndex++));
+                if (sharedElement != null)
+                    transaction.addSharedElement(sharedElement);
+            }
+            manager.pushTransaction(transaction);
+        }
+    }
+}
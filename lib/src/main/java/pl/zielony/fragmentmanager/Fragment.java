@@ -10,11 +10,8 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import java.io.Serializable;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import pl.zielony.animator.Animator;
@@ -36,11 +33,14 @@ public abstract class Fragment extends ManagerBase {
     private View view;
 
     private boolean pooling;
+    private boolean incrementalSave;
+    private boolean stateDirty = true;
+    private Bundle savedState;
 
     private FragmentAnimator fragmentAnimator;
     private ManagerBase manager;
 
-    private FragmentAnnotation annotation;
+    private FragmentClassRegistry.Entry classEntry;
 
     private int target = NO_TARGET;
     private static SparseArray<Bundle> results = new SparseArray<>();
@@ -50,56 +50,47 @@ public abstract class Fragment extends ManagerBase {
     private String tag;
 
     public Fragment() {
-        annotation = getClass().getAnnotation(FragmentAnnotation.class);
-        if (annotation != null) {
-            pooling = annotation.pooling();
-            Class<? extends FragmentAnimator> animatorClass = annotation.animator();
-            if (animatorClass != FragmentAnimator.EMPTY) {
-                try {
-                    fragmentAnimator = animatorClass.getConstructor().newInstance();
-                } catch (Exception e) {
-                    throw new RuntimeException("Fragment animator has to have a zero-parameter constructor");
-                }
-            }
-        }
+        classEntry = FragmentClassRegistry.get(getClass());
+        pooling = classEntry.pooling;
+        incrementalSave = classEntry.incrementalSave;
+        fragmentAnimator = classEntry.animator;
 
-        StateMachine stateMachine = getStateMachine();
-        stateMachine.addEdge(StateMachine.STATE_NEW, STATE_CREATED, () -> activity != null, __ -> {
+        addLifecycleEdge(StateMachine.STATE_NEW, STATE_CREATED, () -> activity != null, __ -> {
             onCreate();
             for (OnFragmentStateChangedListener listener : fragmentStateChangedListener)
                 listener.onCreateChanged(true);
         });
-        stateMachine.addEdge(STATE_CREATED, STATE_ATTACHED, () -> getRootView().isAttached(), __ -> {
+        addLifecycleEdge(STATE_CREATED, STATE_ATTACHED, () -> getRootView().isAttached(), __ -> {
             onAttach();
             for (OnFragmentStateChangedListener listener : fragmentStateChangedListener)
                 listener.onAttachedChanged(true);
         });
-        stateMachine.addEdge(STATE_ATTACHED, STATE_STARTED, () -> desiredState == STATE_STARTED || desiredState == STATE_RESUMED, __ -> {
+        addLifecycleEdge(STATE_ATTACHED, STATE_STARTED, () -> desiredState == STATE_STARTED || desiredState == STATE_RESUMED, __ -> {
             onStart();
             for (OnFragmentStateChangedListener listener : fragmentStateChangedListener)
                 listener.onStartedChanged(true);
         });
-        stateMachine.addEdge(STATE_STARTED, STATE_RESUMED, () -> desiredState == STATE_RESUMED, __ -> {
+        addLifecycleEdge(STATE_STARTED, STATE_RESUMED, () -> desiredState == STATE_RESUMED, __ -> {
             onResume();
             for (OnFragmentStateChangedListener listener : fragmentStateChangedListener)
                 listener.onResumedChanged(true);
         });
-        stateMachine.addEdge(STATE_RESUMED, STATE_STARTED, () -> desiredState == STATE_STARTED, __ -> {
+        addLifecycleEdge(STATE_RESUMED, STATE_STARTED, () -> desiredState == STATE_STARTED, __ -> {
             onPause();
             for (OnFragmentStateChangedListener listener : fragmentStateChangedListener)
                 listener.onResumedChanged(false);
         });
-        stateMachine.addEdge(STATE_STARTED, STATE_ATTACHED, () -> desiredState == STATE_ATTACHED, __ -> {
+        addLifecycleEdge(STATE_STARTED, STATE_ATTACHED, () -> desiredState == STATE_ATTACHED, __ -> {
             onStop();
             for (OnFragmentStateChangedListener listener : fragmentStateChangedListener)
                 listener.onStartedChanged(false);
         });
-        stateMachine.addEdge(STATE_ATTACHED, STATE_CREATED, () -> !getRootView().isAttached(), __ -> {
+        addLifecycleEdge(STATE_ATTACHED, STATE_CREATED, () -> !getRootView().isAttached(), __ -> {
             onDetach();
             for (OnFragmentStateChangedListener listener : fragmentStateChangedListener)
                 listener.onAttachedChanged(false);
         });
-        stateMachine.addEdge(STATE_CREATED, StateMachine.STATE_NEW, () -> activity == null, __ -> {
+        addLifecycleEdge(STATE_CREATED, StateMachine.STATE_NEW, () -> activity == null, __ -> {
             onDestroy();
             for (OnFragmentStateChangedListener listener : fragmentStateChangedListener)
                 listener.onCreateChanged(false);
@@ -111,14 +102,12 @@ public abstract class Fragment extends ManagerBase {
     }
 
     protected int getViewResId() {
-        if (annotation != null)
-            return annotation.layout();
-        return 0;
+        return classEntry.layout;
     }
 
     public String getTitle() {
-        if (annotation != null)
-            return getString(annotation.title());
+        if (classEntry.annotated)
+            return getString(classEntry.title);
         return "";
     }
 
@@ -132,12 +121,16 @@ public abstract class Fragment extends ManagerBase {
     }
 
     public List<View> findViewsById(int id) {
+        ViewIndex index = getRootView().getViewIndex();
+        if (index != null)
+            return index.getById(id);
+
         ArrayList<View> result = new ArrayList<>();
-        ArrayList<ViewGroup> groups = new ArrayList<>();
+        ArrayDeque<ViewGroup> groups = new ArrayDeque<>();
         groups.add(getRootView());
 
         while (!groups.isEmpty()) {
-            ViewGroup group = groups.remove(0);
+            ViewGroup group = groups.poll();
 
             for (int i = 0; i < group.getChildCount(); ++i) {
                 View child = group.getChildAt(i);
@@ -157,12 +150,16 @@ public abstract class Fragment extends ManagerBase {
     }
 
     public List<View> findViewsWithTag(Object tag) {
+        ViewIndex index = getRootView().getViewIndex();
+        if (index != null)
+            return index.getByTag(tag);
+
         ArrayList<View> result = new ArrayList<>();
-        ArrayList<ViewGroup> groups = new ArrayList<>();
+        ArrayDeque<ViewGroup> groups = new ArrayDeque<>();
         groups.add(getRootView());
 
         while (!groups.isEmpty()) {
-            ViewGroup group = groups.remove(0);
+            ViewGroup group = groups.poll();
 
             for (int i = 0; i < group.getChildCount(); ++i) {
                 View child = group.getChildAt(i);
@@ -178,11 +175,15 @@ public abstract class Fragment extends ManagerBase {
     }
 
     public <Type> Type findViewOfType(Class<Type> type) {
-        ArrayList<ViewGroup> groups = new ArrayList<>();
+        ViewIndex index = getRootView().getViewIndex();
+        if (index != null)
+            return (Type) index.getFirstByClass(type);
+
+        ArrayDeque<ViewGroup> groups = new ArrayDeque<>();
         groups.add(getRootView());
 
         while (!groups.isEmpty()) {
-            ViewGroup group = groups.remove(0);
+            ViewGroup group = groups.poll();
 
             for (int i = 0; i < group.getChildCount(); ++i) {
                 View child = group.getChildAt(i);
@@ -198,12 +199,16 @@ public abstract class Fragment extends ManagerBase {
     }
 
     public <Type> List<Type> findViewsOfType(Class<Type> type) {
+        ViewIndex index = getRootView().getViewIndex();
+        if (index != null)
+            return (List<Type>) index.getByClass(type);
+
         ArrayList<Type> result = new ArrayList<>();
-        ArrayList<ViewGroup> groups = new ArrayList<>();
+        ArrayDeque<ViewGroup> groups = new ArrayDeque<>();
         groups.add(getRootView());
 
         while (!groups.isEmpty()) {
-            ViewGroup group = groups.remove(0);
+            ViewGroup group = groups.poll();
 
             for (int i = 0; i < group.getChildCount(); ++i) {
                 View child = group.getChildAt(i);
@@ -218,25 +223,67 @@ public abstract class Fragment extends ManagerBase {
         return result;
     }
 
+    /**
+     * Enables the view index used by findViewsById(), findViewsWithTag(), findViewOfType() and
+     * findViewsOfType(). Queries by type cost as much as the number of found views. Queries by id and tag
+     * check ids and tags of all indexed views, but don't traverse the hierarchy. Results are the same as
+     * without the index.
+     *
+     * @see FragmentRootView#setViewIndexEnabled(boolean)
+     */
+    public void setViewIndexEnabled(boolean viewIndexEnabled) {
+        getRootView().setViewIndexEnabled(viewIndexEnabled);
+    }
+
     public Animator animateAdd() {
-        return fragmentAnimator == null ? null : fragmentAnimator.animateAdd(this);
+        return fragmentAnimator == null ? null : withStatsKey(fragmentAnimator.animateAdd(this));
     }
 
     public Animator animateStop() {
-        return fragmentAnimator == null ? null : fragmentAnimator.animateStop(this);
+        return fragmentAnimator == null ? null : withStatsKey(fragmentAnimator.animateStop(this));
     }
 
     public Animator animateRemove() {
-        return fragmentAnimator == null ? null : fragmentAnimator.animateRemove(this);
+        return fragmentAnimator == null ? null : withStatsKey(fragmentAnimator.animateRemove(this));
     }
 
     public Animator animateStart() {
-        return fragmentAnimator == null ? null : fragmentAnimator.animateStart(this);
+        return fragmentAnimator == null ? null : withStatsKey(fragmentAnimator.animateStart(this));
+    }
+
+    /**
+     * Aggregates frame stats of fragment animations per animator class
+     */
+    private Animator withStatsKey(Animator animator) {
+        if (animator != null && animator.getStatsKey() == null)
+            animator.setStatsKey(fragmentAnimator.getClass());
+        return animator;
     }
 
     protected void create(Activity activity, Bundle userState) {
-        this.activity = activity;
-        id = idSequence++;
+        FragmentTracer tracer = FragmentTracers.tracer;
+        if (tracer != null)
+            tracer.beginSection(FragmentTracer.CREATE, this);
+        try {
+            this.activity = activity;
+            id = idSequence++;
+            createView(activity);
+
+            this.userState = userState;
+            invalidateState();
+
+            getStateMachine().update();
+        } finally {
+            if (tracer != null)
+                tracer.endSection(FragmentTracer.CREATE, this);
+        }
+    }
+
+    /**
+     * Creates the root view and the fragment's view if they don't exist yet. Doesn't touch the lifecycle,
+     * so it can be used to inflate views ahead of time, also on a background thread if the layout allows it.
+     */
+    void createView(Activity activity) {
         if (rootView == null) {
             rootView = new FragmentRootView(activity);
             rootView.addOnLayoutChangeListener(new FragmentRootView.OnLayoutChangeListener() {
@@ -256,16 +303,24 @@ public abstract class Fragment extends ManagerBase {
                     getStateMachine().update();
                 }
             });
+            updateInputListener();
         }
         if (view == null) {
-            view = onCreateView();
+            Activity currentActivity = this.activity;
+            this.activity = activity;
+            FragmentTracer tracer = FragmentTracers.tracer;
+            if (tracer != null)
+                tracer.beginSection(FragmentTracer.CREATE_VIEW, this);
+            try {
+                view = onCreateView();
+            } finally {
+                this.activity = currentActivity;
+                if (tracer != null)
+                    tracer.endSection(FragmentTracer.CREATE_VIEW, this);
+            }
             view.setVisibility(View.INVISIBLE);
-            getRootView().addView(view);
+            rootView.addView(view);
         }
-
-        this.userState = userState;
-
-        getStateMachine().update();
     }
 
     public void destroy() {
@@ -279,6 +334,11 @@ public abstract class Fragment extends ManagerBase {
     }
 
     public void save(Bundle state) {
+        if (incrementalSave && !isStateDirty()) {
+            state.putAll(savedState);
+            return;
+        }
+
         super.save(state);
 
         if (target != NO_TARGET)
@@ -290,9 +350,15 @@ public abstract class Fragment extends ManagerBase {
         SparseArray<Parcelable> container = new SparseArray<>();
         view.saveHierarchyState(container);
         state.putSparseParcelableArray(HIERARCHY_STATE, container);
+
+        if (incrementalSave) {
+            savedState = new Bundle(state);
+            stateDirty = false;
+        }
     }
 
     public void restore(Bundle state) {
+        invalidateState();
         super.restore(state);
 
         if (state.containsKey(TARGET))
@@ -300,11 +366,64 @@ public abstract class Fragment extends ManagerBase {
         id = state.getInt(ID);
         tag = state.getString(TAG);
 
-        view.restoreHierarchyState(state.getSparseParcelableArray(HIERARCHY_STATE));
+        SparseArray<Parcelable> container = state.getSparseParcelableArray(HIERARCHY_STATE);
+        if (container != null)
+            view.restoreHierarchyState(container);
 
         restoreFields(state.getBundle(FIELDS));
     }
 
+    /**
+     * @return state saved by {@link #save(Bundle)} without view hierarchy state, child fragments and the
+     * user state. The user state is dropped too, so fragments which add their children when
+     * {@link #getState()} is null recreate them.
+     */
+    static Bundle compactState(Bundle state) {
+        Bundle compact = new Bundle();
+        if (state.containsKey(TARGET))
+            compact.putInt(TARGET, state.getInt(TARGET));
+        compact.putInt(ID, state.getInt(ID));
+        compact.putString(TAG, state.getString(TAG));
+        compact.putBundle(FIELDS, state.getBundle(FIELDS));
+        return compact;
+    }
+
+    /**
+     * Enables reusing the saved state until something invalidates it. The state is invalidated by touch and
+     * key events, lifecycle and backstack changes of this fragment and its children, activity results and
+     * new intents. It's also always saved when the fragment's view has focus. Changes made without user
+     * input (like @State fields set in a callback) have to be followed by {@link #invalidateState()}.
+     */
+    public void setIncrementalSave(boolean incrementalSave) {
+        this.incrementalSave = incrementalSave;
+        invalidateState();
+        updateInputListener();
+    }
+
+    // without incremental save the state is saved anyway, so input doesn't need to invalidate it
+    private void updateInputListener() {
+        if (rootView != null)
+            rootView.setOnInputListener(incrementalSave ? this::invalidateState : null);
+    }
+
+    public boolean isIncrementalSave() {
+        return incrementalSave;
+    }
+
+    @Override
+    public void invalidateState() {
+        if (incrementalSave && stateDirty)
+            return;   // the parent is dirty since this fragment was saved
+        stateDirty = true;
+        savedState = null;
+        if (manager != null)
+            manager.invalidateState();
+    }
+
+    private boolean isStateDirty() {
+        return stateDirty || savedState == null || rootView.hasFocus();
+    }
+
     public void setPoolingEnabled(boolean pooling) {
         this.pooling = pooling;
     }
@@ -326,21 +445,26 @@ public abstract class Fragment extends ManagerBase {
     }
 
     public static <T extends Fragment> T instantiate(Class<T> fragmentClass, Activity activity, Bundle state) {
+        return (T) initialize(obtain(fragmentClass), activity, state);
+    }
+
+    /**
+     * Takes a fragment from the pool or creates a new instance. The fragment is not created yet.
+     */
+    static Fragment obtain(Class<? extends Fragment> fragmentClass) {
         Fragment fragment = FragmentPool.remove(fragmentClass);
-        if (fragment == null) {
-            try {
-                fragment = fragmentClass.getConstructor().newInstance();
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-        }
+        if (fragment == null)
+            fragment = FragmentClassRegistry.newInstance(fragmentClass);
+        return fragment;
+    }
 
+    static Fragment initialize(Fragment fragment, Activity activity, Bundle state) {
         fragment.create(activity, state != null ? state.getBundle(USER_STATE) : null);
 
         if (state != null)
             fragment.restore(state);
 
-        return (T) fragment;
+        return fragment;
     }
 
     public void onResult(Bundle result) {
@@ -348,6 +472,7 @@ public abstract class Fragment extends ManagerBase {
 
     public void setTargetFragment(Fragment target) {
         this.target = target.id;
+        invalidateState();
     }
 
     public void setResult(Bundle result) {
@@ -373,7 +498,11 @@ public abstract class Fragment extends ManagerBase {
     }
 
     public void setTag(String tag) {
+        String oldTag = this.tag;
         this.tag = tag;
+        invalidateState();
+        if (manager != null)
+            manager.onFragmentTagChanged(this, oldTag, tag);
     }
 
     public int getTarget() {
@@ -395,6 +524,16 @@ public abstract class Fragment extends ManagerBase {
         this.manager = manager;
     }
 
+    @Override
+    ManagerBase getParent() {
+        return manager;
+    }
+
+    @Override
+    String getSpillSession() {
+        return manager != null ? manager.getSpillSession() : super.getSpillSession();
+    }
+
     public ManagerBase getManager() {
         return manager;
     }
@@ -404,60 +543,19 @@ public abstract class Fragment extends ManagerBase {
         return getClass().getSimpleName() + ":" + hashCode() % 100 + " [id:" + id + ", tag:" + tag + "]";
     }
 
+    @SuppressWarnings("unchecked")
     private void restoreFields(Bundle state) {
         if (state != null) {
-            List<Field> fields = new ArrayList<>();
-            Class thisClass = getClass();
-            while (thisClass != Fragment.class) {
-                fields.addAll(Arrays.asList(thisClass.getDeclaredFields()));
-                thisClass = thisClass.getSuperclass();
-            }
-            for (Field f : fields) {
-                State annotation = f.getAnnotation(State.class);
-                if (annotation != null) {
-                    String name = f.getName();
-                    Serializable value = state.getSerializable(name);
-                    try {
-                        Method m = getClass().getMethod("set" + name.substring(0, 1).toUpperCase() + name.substring(1), f.getType());
-                        m.setAccessible(true);
-                        m.invoke(this, value);
-                        continue;
-                    } catch (NoSuchMethodException e) {
-                        e.printStackTrace();
-                    } catch (InvocationTargetException e) {
-                        e.printStackTrace();
-                    } catch (IllegalAccessException e) {
-                        e.printStackTrace();
-                    }
-                    try {
-                        f.setAccessible(true);
-                        f.set(this, value);
-                    } catch (IllegalAccessException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
+            for (StateBinder binder : StateBinders.get(getClass()))
+                binder.restore(this, state);
         }
     }
 
+    @SuppressWarnings("unchecked")
     private Bundle saveFields() {
         Bundle state = new Bundle();
-        List<Field> fields = new ArrayList<>();
-        Class thisClass = getClass();
-        while (thisClass != Fragment.class) {
-            fields.addAll(Arrays.asList(thisClass.getDeclaredFields()));
-            thisClass = thisClass.getSuperclass();
-        }
-        for (Field f : fields) {
-            if (f.getAnnotation(State.class) != null) {
-                try {
-                    f.setAccessible(true);
-                    state.putSerializable(f.getName(), (Serializable) f.get(this));
-                } catch (IllegalAccessException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
+        for (StateBinder binder : StateBinders.get(getClass()))
+            binder.save(this, state);
         return state;
     }
 }
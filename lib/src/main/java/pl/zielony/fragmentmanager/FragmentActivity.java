@@ -115,6 +115,13 @@ public class FragmentActivity extends AppCompatActivity {
         return fragmentManager;
     }
 
+    @Override
+    protected void onDestroy() {
+        if (isFinishing())
+            fragmentManager.deleteSpilledStates();
+        super.onDestroy();
+    }
+
     @Override
     protected void onStart() {
         super.onStart();
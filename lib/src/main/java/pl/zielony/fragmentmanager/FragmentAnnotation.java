@@ -19,5 +19,22 @@ public @interface FragmentAnnotation {
 
     boolean pooling() default true;
 
+    /**
+     * Maximum number of idle instances kept in {@link FragmentPool}
+     */
+    int poolSize() default 1;
+
+    /**
+     * Inflate the view on a background thread when the fragment is added by a transaction
+     */
+    boolean asyncInflation() default false;
+
+    /**
+     * Reuse the saved state until the fragment is invalidated
+     *
+     * @see Fragment#setIncrementalSave(boolean)
+     */
+    boolean incrementalSave() default false;
+
     Class<? extends FragmentAnimator> animator() default DefaultFragmentAnimator.class;
 }
@@ -0,0 +1,140 @@
+package pl.zielony.fragmentmanager;
+
+import java.lang.reflect.Constructor;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of per-class fragment metadata. Each fragment class is resolved once: its factory or
+ * constructor, {@link FragmentAnnotation} values and a shared animator instance. Animators declared in the
+ * annotation are shared by all fragments of a class, so they should not keep any per-fragment state.
+ */
+public final class FragmentClassRegistry {
+    private static final Map<Class<? extends Fragment>, Entry> entries = new HashMap<>();
+    private static final Map<String, Class<?>> classes = new HashMap<>();
+    private static final Map<Class<?>, Constructor<?>> constructors = new HashMap<>();
+
+    static class Entry {
+        final boolean annotated;
+        final int layout;
+        final int title;
+        final boolean pooling;
+        final int poolSize;
+        final boolean asyncInflation;
+        final boolean incrementalSave;
+        final FragmentAnimator animator;
+        private FragmentFactory<?> factory;
+        private Constructor<? extends Fragment> constructor;
+
+        Entry(Class<? extends Fragment> fragmentClass) {
+            FragmentAnnotation annotation = fragmentClass.getAnnotation(FragmentAnnotation.class);
+            annotated = annotation != null;
+            if (annotation != null) {
+                layout = annotation.layout();
+                title = annotation.title();
+                pooling = annotation.pooling();
+                poolSize = annotation.poolSize();
+                asyncInflation = annotation.asyncInflation();
+                incrementalSave = annotation.incrementalSave();
+                Class<? extends FragmentAnimator> animatorClass = annotation.animator();
+                if (animatorClass != FragmentAnimator.EMPTY) {
+                    try {
+                        animator = animatorClass.getConstructor().newInstance();
+                    } catch (Exception e) {
+                        throw new RuntimeException("Fragment animator has to have a zero-parameter constructor");
+                    }
+                } else {
+                    animator = null;
+                }
+            } else {
+                layout = 0;
+                title = 0;
+                pooling = false;
+                poolSize = 1;
+                asyncInflation = false;
+                incrementalSave = false;
+                animator = null;
+            }
+            factory = findGeneratedFactory(fragmentClass);
+            if (factory == null) {
+                try {
+                    constructor = fragmentClass.getConstructor();
+                } catch (NoSuchMethodException e) {
+                    // reported when the fragment is instantiated
+                }
+            }
+        }
+
+        Fragment newInstance(Class<? extends Fragment> fragmentClass) {
+            if (factory != null)
+                return factory.create();
+            if (constructor == null)
+                throw new RuntimeException(fragmentClass.getName() + " has to have a public zero-parameter constructor");
+            try {
+                return constructor.newInstance();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private FragmentClassRegistry() {
+    }
+
+    /**
+     * Registers a factory used instead of the reflective constructor call.
+     */
+    public static synchronized <T extends Fragment> void register(Class<T> fragmentClass, FragmentFactory<T> factory) {
+        get(fragmentClass).factory = factory;
+    }
+
+    static synchronized Entry get(Class<? extends Fragment> fragmentClass) {
+        Entry entry = entries.get(fragmentClass);
+        if (entry == null) {
+            entry = new Entry(fragmentClass);
+            entries.put(fragmentClass, entry);
+        }
+        return entry;
+    }
+
+    static <T extends Fragment> T newInstance(Class<T> fragmentClass) {
+        return fragmentClass.cast(get(fragmentClass).newInstance(fragmentClass));
+    }
+
+    static synchronized Class<?> forName(String className) throws ClassNotFoundException {
+        Class<?> klass = classes.get(className);
+        if (klass == null) {
+            klass = Class.forName(className);
+            classes.put(className, klass);
+        }
+        return klass;
+    }
+
+    /**
+     * Creates an object of a class with a zero-parameter constructor. The constructor doesn't have to be public.
+     */
+    static Object newInstance(String className) throws Exception {
+        Constructor<?> constructor;
+        synchronized (FragmentClassRegistry.class) {
+            Class<?> klass = forName(className);
+            constructor = constructors.get(klass);
+            if (constructor == null) {
+                constructor = klass.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                constructors.put(klass, constructor);
+            }
+        }
+        return constructor.newInstance();
+    }
+
+    private static FragmentFactory<?> findGeneratedFactory(Class<? extends Fragment> fragmentClass) {
+        try {
+            Class<?> factoryClass = Class.forName(fragmentClass.getName() + FragmentFactory.SUFFIX, true, fragmentClass.getClassLoader());
+            return (FragmentFactory<?>) factoryClass.getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (Exception e) {
+            throw new RuntimeException("Unable to create fragment factory for " + fragmentClass.getName(), e);
+        }
+    }
+}
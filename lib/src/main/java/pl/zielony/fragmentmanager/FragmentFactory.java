@@ -0,0 +1,11 @@
+package pl.zielony.fragmentmanager;
+
+/**
+ * Creates fragments without reflection. Factories can be registered by hand in {@link FragmentClassRegistry}
+ * or generated by the annotation processor for classes annotated with {@link FragmentAnnotation}.
+ */
+public interface FragmentFactory<T extends Fragment> {
+    String SUFFIX = "_Factory";
+
+    T create();
+}
@@ -13,16 +13,17 @@ public class FragmentManager extends ManagerBase {
     public FragmentManager(Activity activity, Bundle state) {
         this.activity = activity;
         this.userState = state;
+        if (state == null && activity.isTaskRoot())
+            StateSpill.deleteOrphanedSessions(activity);
 
-        StateMachine stateMachine = getStateMachine();
-        stateMachine.addEdge(StateMachine.STATE_NEW, STATE_CREATED, () -> desiredState >= STATE_CREATED, __ -> onCreate());
-        stateMachine.addEdge(STATE_CREATED, STATE_ATTACHED, () -> desiredState >= STATE_ATTACHED, __ -> onAttach());
-        stateMachine.addEdge(STATE_ATTACHED, STATE_STARTED, () -> desiredState >= STATE_STARTED, __ -> onStart());
-        stateMachine.addEdge(STATE_STARTED, STATE_RESUMED, () -> desiredState == STATE_RESUMED, __ -> onResume());
-        stateMachine.addEdge(STATE_RESUMED, STATE_STARTED, () -> desiredState <= STATE_STARTED, __ -> onPause());
-        stateMachine.addEdge(STATE_STARTED, STATE_ATTACHED, () -> desiredState <= STATE_ATTACHED, __ -> onStop());
-        stateMachine.addEdge(STATE_ATTACHED, STATE_CREATED, () -> desiredState == STATE_CREATED, __ -> onDetach());
-        stateMachine.addEdge(STATE_CREATED, StateMachine.STATE_NEW, () -> desiredState == StateMachine.STATE_NEW, __ -> onDestroy());
+        addLifecycleEdge(StateMachine.STATE_NEW, STATE_CREATED, () -> desiredState >= STATE_CREATED, __ -> onCreate());
+        addLifecycleEdge(STATE_CREATED, STATE_ATTACHED, () -> desiredState >= STATE_ATTACHED, __ -> onAttach());
+        addLifecycleEdge(STATE_ATTACHED, STATE_STARTED, () -> desiredState >= STATE_STARTED, __ -> onStart());
+        addLifecycleEdge(STATE_STARTED, STATE_RESUMED, () -> desiredState == STATE_RESUMED, __ -> onResume());
+        addLifecycleEdge(STATE_RESUMED, STATE_STARTED, () -> desiredState <= STATE_STARTED, __ -> onPause());
+        addLifecycleEdge(STATE_STARTED, STATE_ATTACHED, () -> desiredState <= STATE_ATTACHED, __ -> onStop());
+        addLifecycleEdge(STATE_ATTACHED, STATE_CREATED, () -> desiredState == STATE_CREATED, __ -> onDetach());
+        addLifecycleEdge(STATE_CREATED, StateMachine.STATE_NEW, () -> desiredState == StateMachine.STATE_NEW, __ -> onDestroy());
     }
 
     public void setRootView(FragmentRootView rootView) {
@@ -2,41 +2,242 @@ package pl.zielony.fragmentmanager;
 
 import android.app.Activity;
 
+import java.util.ArrayDeque;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Map;
 
 /**
  * Created by Marcin on 2016-10-11.
+ * <p>
+ * Keeps idle fragments for reuse. Each class can hold up to its capacity of instances (see
+ * {@link FragmentAnnotation#poolSize()} and {@link #setCapacity(Class, int)}) and the whole pool is bounded
+ * by {@link #setMaxSize(int)}. When the pool is full, the least recently pooled fragment is evicted.
  */
-
 public class FragmentPool {
-    private static Map<Class<? extends Fragment>, Fragment> fragmentPool = new HashMap<>();
+    public static final int DEFAULT_MAX_SIZE = 16;
+
+    private static Map<Class<? extends Fragment>, ClassPool> fragmentPool = new HashMap<>();
+    private static LinkedHashSet<Fragment> lru = new LinkedHashSet<>();
+    private static int maxSize = DEFAULT_MAX_SIZE;
+    private static final Stats stats = new Stats();
+
+    private static class ClassPool {
+        final ArrayDeque<Fragment> fragments = new ArrayDeque<>();
+        final Stats stats = new Stats();
+        int capacity;
+        PrewarmHandle prewarm;
+
+        ClassPool(Class<? extends Fragment> fragmentClass) {
+            capacity = FragmentClassRegistry.get(fragmentClass).poolSize;
+        }
+    }
+
+    /**
+     * Pool counters. Returned objects are snapshots.
+     */
+    public static class Stats {
+        private int hits, misses, evictions, size;
+
+        public int getHits() {
+            return hits;
+        }
+
+        public int getMisses() {
+            return misses;
+        }
+
+        public int getEvictions() {
+            return evictions;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        Stats copy() {
+            Stats copy = new Stats();
+            copy.hits = hits;
+            copy.misses = misses;
+            copy.evictions = evictions;
+            copy.size = size;
+            return copy;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "hits=" + hits +
+                    ", misses=" + misses +
+                    ", evictions=" + evictions +
+                    ", size=" + size +
+                    '}';
+        }
+    }
 
     private FragmentPool(){
 
     }
 
     public static void put(Class<? extends Fragment> fragmentClass, Activity activity) {
-        FragmentAnnotation annotation = fragmentClass.getAnnotation(FragmentAnnotation.class);
-        if (annotation != null && !annotation.pooling())
+        FragmentClassRegistry.Entry entry = FragmentClassRegistry.get(fragmentClass);
+        if (entry.annotated && !entry.pooling)
             throw new RuntimeException(fragmentClass.getSimpleName() + " cannot be pooled because pooling is disabled by annotation");
-        if (!fragmentPool.containsKey(fragmentClass))
-            fragmentPool.put(fragmentClass, Fragment.instantiate(fragmentClass, activity, null));
+        synchronized (FragmentPool.class) {
+            ClassPool classPool = getClassPool(fragmentClass);
+            if (classPool.fragments.size() >= classPool.capacity)
+                return;
+        }
+        add(Fragment.instantiate(fragmentClass, activity, null));
+    }
+
+    /**
+     * Builds fragments ahead of navigation during main looper idle time. View inflation runs on a background
+     * thread when possible. Raises the class's capacity to {@code count} if needed, but not the pool's max
+     * size - {@code count} can't exceed it. Overlapping prewarms of one class share a handle. Has to be called
+     * on the main thread.
+     *
+     * @return handle reporting when all fragments are pooled
+     */
+    public static PrewarmHandle prewarm(Class<? extends Fragment> fragmentClass, int count, Activity activity) {
+        FragmentClassRegistry.Entry entry = FragmentClassRegistry.get(fragmentClass);
+        if (entry.annotated && !entry.pooling)
+            throw new RuntimeException(fragmentClass.getSimpleName() + " cannot be pooled because pooling is disabled by annotation");
+        PrewarmHandle handle;
+        synchronized (FragmentPool.class) {
+            if (count > maxSize)
+                throw new IllegalArgumentException("Can't prewarm " + count + " fragments, the pool keeps up to " + maxSize);
+            ClassPool classPool = getClassPool(fragmentClass);
+            if (classPool.capacity < count)
+                classPool.capacity = count;
+            handle = classPool.prewarm;
+            int pending = handle != null ? handle.getPendingCount() : 0;
+            int missing = Math.max(0, count - classPool.fragments.size() - pending);
+            if (handle != null) {
+                handle.extend(missing);
+                return handle;
+            }
+            handle = new PrewarmHandle(fragmentClass, missing, activity);
+            if (missing > 0)
+                classPool.prewarm = handle;
+        }
+        handle.start();
+        return handle;
+    }
+
+    static synchronized void onPrewarmFinished(PrewarmHandle handle) {
+        ClassPool classPool = getClassPool(handle.getFragmentClass());
+        if (classPool.prewarm == handle)
+            classPool.prewarm = null;
     }
 
     public static void put(Fragment fragment) {
         if (!fragment.isPoolingEnabled())
             return;
-        if (!fragmentPool.containsKey(fragment.getClass()))
-            fragmentPool.put(fragment.getClass(), fragment);
+        add(fragment);
+    }
+
+    /**
+     * @return true if the fragment is in the pool
+     */
+    static synchronized boolean add(Fragment fragment) {
+        if (lru.contains(fragment))
+            return true;
+        ClassPool classPool = getClassPool(fragment.getClass());
+        if (classPool.fragments.size() >= classPool.capacity) {
+            classPool.stats.evictions++;
+            stats.evictions++;
+            return false;
+        }
+        classPool.fragments.addLast(fragment);
+        lru.add(fragment);
+        classPool.stats.size++;
+        stats.size++;
+        trimToSize(maxSize);
+        return lru.contains(fragment);
     }
 
     // wyczyść basen :D
-    public static void clear() {
-        fragmentPool.clear();
+    public static synchronized void clear() {
+        trimToSize(0);
+    }
+
+    public static synchronized <T extends Fragment> Fragment remove(Class<T> fragmentClass) {
+        ClassPool classPool = getClassPool(fragmentClass);
+        Fragment fragment = classPool.fragments.pollLast();
+        if (fragment == null) {
+            classPool.stats.misses++;
+            stats.misses++;
+            return null;
+        }
+        lru.remove(fragment);
+        classPool.stats.hits++;
+        classPool.stats.size--;
+        stats.hits++;
+        stats.size--;
+        return fragment;
+    }
+
+    /**
+     * Sets how many idle instances of a class can be kept. Overrides {@link FragmentAnnotation#poolSize()}.
+     */
+    public static synchronized void setCapacity(Class<? extends Fragment> fragmentClass, int capacity) {
+        ClassPool classPool = getClassPool(fragmentClass);
+        classPool.capacity = capacity;
+        while (classPool.fragments.size() > capacity)
+            evict(classPool.fragments.peekFirst());
+    }
+
+    /**
+     * Sets how many idle instances can be kept in total
+     */
+    public static synchronized void setMaxSize(int maxSize) {
+        FragmentPool.maxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    public static synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    public static synchronized Stats getStats() {
+        return stats.copy();
+    }
+
+    public static synchronized Stats getStats(Class<? extends Fragment> fragmentClass) {
+        return getClassPool(fragmentClass).stats.copy();
+    }
+
+    private static ClassPool getClassPool(Class<? extends Fragment> fragmentClass) {
+        ClassPool classPool = fragmentPool.get(fragmentClass);
+        if (classPool == null) {
+            classPool = new ClassPool(fragmentClass);
+            fragmentPool.put(fragmentClass, classPool);
+        }
+        return classPool;
+    }
+
+    private static void trimToSize(int size) {
+        Iterator<Fragment> iterator = lru.iterator();
+        while (lru.size() > size && iterator.hasNext()) {
+            Fragment fragment = iterator.next();
+            iterator.remove();
+            removeEvicted(fragment);
+        }
+    }
+
+    private static void evict(Fragment fragment) {
+        lru.remove(fragment);
+        removeEvicted(fragment);
     }
 
-    public static <T extends Fragment> Fragment remove(Class<T> fragmentClass) {
-        return fragmentPool.remove(fragmentClass);
+    private static void removeEvicted(Fragment fragment) {
+        ClassPool classPool = fragmentPool.get(fragment.getClass());
+        classPool.fragments.remove(fragment);
+        classPool.stats.evictions++;
+        classPool.stats.size--;
+        stats.evictions++;
+        stats.size--;
     }
 }
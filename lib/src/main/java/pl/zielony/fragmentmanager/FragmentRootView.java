@@ -11,42 +11,36 @@ import android.view.View;
 import android.widget.FrameLayout;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+
+import pl.zielony.animator.Animator;
 
 public class FragmentRootView extends FrameLayout {
     private boolean locked = false;
-    private Map<View, ViewDesc> sharedViews = new HashMap<>();
+    private final SharedElementOverlay overlay = new SharedElementOverlay(this);
+    private long layerBytes = 0;
 
     private List<OnLayoutChangeListener> layoutListeners = new ArrayList<>();
     private List<OnAttachStateChangeListener> attachListeners = new ArrayList<>();
     private boolean preventLayout = false;
 
     private boolean attached = false;
+    private boolean laidOut = false;
+    private OnInputListener inputListener;
+    private boolean viewIndexEnabled = false;
+    private ViewIndex viewIndex;
 
     LockListenerAdapter lockListenerAdapter = new LockListenerAdapter(this);
 
-    class ViewDesc {
-        private final int left, right, top, bottom;
-
-        public ViewDesc(View view) {
-            left = view.getLeft();
-            top = view.getTop();
-            right = view.getRight();
-            bottom = view.getBottom();
-        }
-
-        void restore(View view) {
-            view.layout(left, top, right, bottom);
-        }
-    }
-
     public interface OnLayoutChangeListener {
         void onLayoutChange(View v, int left, int top, int right, int bottom,
                             int oldLeft, int oldTop, int oldRight, int oldBottom);
     }
 
+    public interface OnInputListener {
+        void onInput();
+    }
+
     public interface OnAttachStateChangeListener {
         void onViewAttachedToWindow(View v);
 
@@ -82,9 +76,17 @@ public class FragmentRootView extends FrameLayout {
         return attached;
     }
 
+    /**
+     * @return true if this view was laid out at least once since it was attached to a window
+     */
+    public boolean isLaidOut() {
+        return laidOut;
+    }
+
     @Override
     protected void onAttachedToWindow() {
         attached = true;
+        laidOut = false;
         super.onAttachedToWindow();
         for (OnAttachStateChangeListener listener : attachListeners)
             listener.onViewAttachedToWindow(this);
@@ -93,6 +95,7 @@ public class FragmentRootView extends FrameLayout {
     @Override
     protected void onDetachedFromWindow() {
         attached = false;
+        laidOut = false;
         super.onDetachedFromWindow();
         for (OnAttachStateChangeListener listener : attachListeners)
             listener.onViewDetachedFromWindow(this);
@@ -105,6 +108,7 @@ public class FragmentRootView extends FrameLayout {
         int prevRight = getRight();
         int prevBottom = getBottom();
         super.onLayout(changed, left, top, right, bottom);
+        laidOut = true;
         for (OnLayoutChangeListener listener : layoutListeners)
             listener.onLayoutChange(this, left, top, right, bottom, prevLeft, prevTop, prevRight, prevBottom);
     }
@@ -132,29 +136,86 @@ public class FragmentRootView extends FrameLayout {
         attachListeners.remove(listener);
     }
 
+    /**
+     * Enables indexing child views by id, tag and class. The index is built on the first query and is kept up
+     * to date with OnHierarchyChangeListeners set on child view groups. Listeners set before the index is built
+     * are still called; listeners set later replace the index's listener, so views added to that group aren't
+     * found.
+     */
+    public void setViewIndexEnabled(boolean viewIndexEnabled) {
+        this.viewIndexEnabled = viewIndexEnabled;
+        if (!viewIndexEnabled && viewIndex != null) {
+            viewIndex.release();
+            viewIndex = null;
+        }
+    }
+
+    public boolean isViewIndexEnabled() {
+        return viewIndexEnabled;
+    }
+
+    /**
+     * @return the view index or null if the index is disabled
+     */
+    ViewIndex getViewIndex() {
+        if (viewIndexEnabled && viewIndex == null)
+            viewIndex = new ViewIndex(this);
+        return viewIndex;
+    }
+
+    /**
+     * Sets a listener called for each touch and key event dispatched to this view's children
+     */
+    public void setOnInputListener(OnInputListener inputListener) {
+        this.inputListener = inputListener;
+    }
+
     @Override
     public boolean dispatchTouchEvent(MotionEvent ev) {
-        return locked || super.dispatchTouchEvent(ev);
+        if (locked)
+            return true;
+        if (inputListener != null)
+            inputListener.onInput();
+        return super.dispatchTouchEvent(ev);
     }
 
     @Override
     public boolean dispatchKeyEvent(KeyEvent event) {
-        return locked || super.dispatchKeyEvent(event);
+        if (locked)
+            return true;
+        if (inputListener != null)
+            inputListener.onInput();
+        return super.dispatchKeyEvent(event);
     }
 
     @Override
     protected void dispatchDraw(Canvas canvas) {
         super.dispatchDraw(canvas);
-        for (View v : sharedViews.keySet())
-            drawChild(canvas, v, getDrawingTime());
+        if (!overlay.isEmpty())
+            overlay.draw(canvas);
+    }
+
+    void drawSharedView(Canvas canvas, View view) {
+        drawChild(canvas, view, getDrawingTime());
     }
 
+    void addSharedElement(SharedElement element) {
+        overlay.add(element);
+    }
+
+    void removeSharedElement(SharedElement element) {
+        overlay.remove(element);
+    }
+
+    /**
+     * Draws the view over this view's children until it's removed. The view's layout is restored on removal.
+     */
     public void addSharedView(View view) {
-        sharedViews.put(view, new ViewDesc(view));
+        overlay.addView(view);
     }
 
     public void removeSharedView(View view) {
-        sharedViews.remove(view).restore(view);
+        overlay.removeView(view);
     }
 
     public boolean isPreventLayout() {
@@ -175,25 +236,45 @@ public class FragmentRootView extends FrameLayout {
     }
 
     public void enterAnimationMode() {
+        enterAnimationMode(Animator.PROPERTY_UNKNOWN);
+    }
+
+    /**
+     * Locks this view for an animation. The fragment's view gets a hardware layer only if the animated
+     * properties benefit from one and the layer fits in the budget.
+     *
+     * @see LayerPolicy
+     */
+    public void enterAnimationMode(int animatedProperties) {
         if (getChildCount() == 0)
             return;
         View fragmentView = getChildAt(0);
-        if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.GINGERBREAD_MR1) {
-            fragmentView.setDrawingCacheEnabled(true);
-        } else {
-            fragmentView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        if (layerBytes == 0) {
+            layerBytes = LayerPolicy.acquire(fragmentView, animatedProperties);
+            if (layerBytes > 0) {
+                if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.GINGERBREAD_MR1) {
+                    fragmentView.setDrawingCacheEnabled(true);
+                } else {
+                    fragmentView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+                }
+            }
         }
         setLocked(true);
     }
 
     public void leaveAnimationMode() {
+        LayerPolicy.release(layerBytes);
+        boolean hadLayer = layerBytes > 0;
+        layerBytes = 0;
         if (getChildCount() == 0)
             return;
-        View fragmentView = getChildAt(0);
-        if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.GINGERBREAD_MR1) {
-            fragmentView.setDrawingCacheEnabled(false);
-        } else {
-            fragmentView.setLayerType(View.LAYER_TYPE_NONE, null);
+        if (hadLayer) {
+            View fragmentView = getChildAt(0);
+            if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.GINGERBREAD_MR1) {
+                fragmentView.setDrawingCacheEnabled(false);
+            } else {
+                fragmentView.setLayerType(View.LAYER_TYPE_NONE, null);
+            }
         }
         setLocked(false);
     }
@@ -1,20 +1,26 @@
 package pl.zielony.fragmentmanager;
 
 import android.app.Activity;
+import android.content.Context;
 import android.os.Bundle;
+import android.os.Parcel;
 
 /**
  * Created by Marcin on 2015-12-02.
  */
 class FragmentState {
 
-    private static final String CLASS = "class", ID = "layoutId", TAG = "tag", FRAGMENT = "fragment";
+    private static final String CLASS = "class", ID = "layoutId", TAG = "tag", FRAGMENT = "fragment", SPILL = "spill";
 
     private Class<? extends Fragment> fragmentClass;
     private Fragment fragment;
     int layoutId;
     String tag;
     private Bundle state;
+    private Fragment preparedFragment;
+    private boolean compact;
+    private int stateSize = -1;
+    private String spillKey;
 
     FragmentState() {
 
@@ -27,6 +33,12 @@ class FragmentState {
         this.tag = tag;
     }
 
+    FragmentState(Class<? extends Fragment> fragmentClass, int layoutId, String tag) {
+        this.fragmentClass = fragmentClass;
+        this.layoutId = layoutId;
+        this.tag = tag;
+    }
+
     Bundle save() {
         Bundle bundle = new Bundle();
         bundle.putString(CLASS, fragmentClass.getName());
@@ -35,17 +47,22 @@ class FragmentState {
         if (fragment != null) {
             state = new Bundle();
             fragment.save(state);
+            compact = false;
+            stateSize = -1;
         }
         bundle.putBundle(FRAGMENT, state);
+        bundle.putString(SPILL, spillKey);
         return bundle;
     }
 
     void restore(Bundle bundle) {
         try {
-            fragmentClass = (Class<? extends Fragment>) Class.forName(bundle.getString(CLASS));
+            fragmentClass = (Class<? extends Fragment>) FragmentClassRegistry.forName(bundle.getString(CLASS));
             layoutId = bundle.getInt(ID);
             tag = bundle.getString(TAG);
             state = bundle.getBundle(FRAGMENT);
+            stateSize = -1;
+            spillKey = bundle.getString(SPILL);
         } catch (ClassNotFoundException e) {
             e.printStackTrace();
         }
@@ -56,7 +73,77 @@ class FragmentState {
     }
 
     public void instantiateFragment(Activity activity) {
-        fragment = Fragment.instantiate(fragmentClass, activity, state);
+        if (spillKey != null) {
+            state = StateSpill.read(activity, spillKey);
+            spillKey = null;
+        }
+        Fragment fragment = preparedFragment != null ? preparedFragment : Fragment.obtain(fragmentClass);
+        preparedFragment = null;
+        this.fragment = Fragment.initialize(fragment, activity, state);
+    }
+
+    /**
+     * Obtains a fragment instance which is not created yet, so its view can be inflated before the
+     * fragment is instantiated
+     */
+    Fragment prepareFragment() {
+        if (preparedFragment == null)
+            preparedFragment = Fragment.obtain(fragmentClass);
+        return preparedFragment;
+    }
+
+    void discardPreparedFragment(Fragment fragment) {
+        if (preparedFragment == fragment)
+            preparedFragment = null;
+    }
+
+    Class<? extends Fragment> getFragmentClass() {
+        return fragmentClass;
+    }
+
+    /**
+     * @return size of the saved state in bytes, measured by parceling the state
+     */
+    int getStateSize() {
+        if (state == null)
+            return 0;
+        if (stateSize < 0) {
+            Parcel parcel = Parcel.obtain();
+            try {
+                parcel.writeBundle(state);
+                stateSize = parcel.dataSize();
+            } finally {
+                parcel.recycle();
+            }
+        }
+        return stateSize;
+    }
+
+    /**
+     * Reduces the saved state of a removed fragment to its id, tag and @State fields. View hierarchy state,
+     * user state and state of child fragments are dropped. The fragment can still be restored from the compacted state.
+     */
+    void compact() {
+        if (fragment != null || state == null || compact)
+            return;
+        state = Fragment.compactState(state);
+        compact = true;
+        stateSize = -1;
+    }
+
+    /**
+     * Moves the saved state of a removed fragment to a file. The state is read back when the fragment is
+     * instantiated.
+     */
+    void spill(Context context, String session) {
+        if (fragment != null || state == null)
+            return;
+        String key = StateSpill.write(context, session, state);
+        if (key == null)
+            return;
+        spillKey = key;
+        state = null;
+        stateSize = -1;
     }
 
     public Bundle getState() {
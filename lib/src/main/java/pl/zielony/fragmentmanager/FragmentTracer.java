@@ -0,0 +1,40 @@
+package pl.zielony.fragmentmanager;
+
+/**
+ * Receives lifecycle, state and transaction sections. Sections are synchronous and properly nested on the
+ * thread they run on. Events mark moments without duration, like the start and the end of an animation.
+ * Install a tracer with {@link FragmentTracers#setTracer(FragmentTracer)}. Methods are called on the main
+ * thread, except for views inflated in background.
+ *
+ * @see SystemTracer
+ * @see RingBufferTracer
+ */
+public interface FragmentTracer {
+    String CREATE = "Fragment.create";
+    String CREATE_VIEW = "Fragment.onCreateView";
+    String START_STATE = "ManagerBase.startState";
+    String REMOVE_STATE = "ManagerBase.removeState";
+    String EXECUTE = "FragmentTransaction.execute";
+    String UNDO = "FragmentTransaction.undo";
+    String START_ANIMATIONS = "FragmentTransaction.startAnimations";
+    String ANIMATION_START = "Animator.start";
+    String ANIMATION_END = "Animator.end";
+
+    String ON_CREATE = "ManagerBase.onCreate";
+    String ON_ATTACH = "ManagerBase.onAttach";
+    String ON_START = "ManagerBase.onStart";
+    String ON_RESUME = "ManagerBase.onResume";
+    String ON_PAUSE = "ManagerBase.onPause";
+    String ON_STOP = "ManagerBase.onStop";
+    String ON_DETACH = "ManagerBase.onDetach";
+    String ON_DESTROY = "ManagerBase.onDestroy";
+
+    /**
+     * @param owner fragment or manager the section runs for
+     */
+    void beginSection(String name, Object owner);
+
+    void endSection(String name, Object owner);
+
+    void event(String name, Object owner);
+}
@@ -0,0 +1,23 @@
+package pl.zielony.fragmentmanager;
+
+/**
+ * Holds the installed tracer. Call sites read {@link #tracer} once and skip tracing when it's null, so
+ * tracing costs one volatile read when it's off.
+ */
+public final class FragmentTracers {
+    static volatile FragmentTracer tracer;
+
+    private FragmentTracers() {
+    }
+
+    /**
+     * @param tracer tracer to install or null to turn tracing off
+     */
+    public static void setTracer(FragmentTracer tracer) {
+        FragmentTracers.tracer = tracer;
+    }
+
+    public static FragmentTracer getTracer() {
+        return tracer;
+    }
+}
@@ -1,14 +1,13 @@
 package pl.zielony.fragmentmanager;
 
 import android.os.Bundle;
-import android.os.Handler;
 import android.support.annotation.NonNull;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import pl.zielony.animator.Animator;
+import pl.zielony.animator.AnimatorListenerAdapter;
 import pl.zielony.animator.AnimatorSet;
 
 import static android.view.View.NO_ID;
@@ -17,16 +16,17 @@ import static android.view.View.NO_ID;
  * Created by Marcin on 2015-12-31.
  */
 public class FragmentTransaction {
-    private static final String CHANGES = "changes";
-    private static final String STATES = "states";
-    private static final String MODE = "mode";
-    private static final String SHARED_ELEMENTS = "sharedElements";
     private static final String SHARED_ELEMENT_CLASS = "sharedElementClass";
 
     private List<StateChange> changes = new ArrayList<>();
     private List<SharedElement> sharedElements = new ArrayList<>();
     private ManagerBase manager;
     private TransactionMode mode;
+    private boolean asyncInflation = false;
+    private AttachBarrier barrier;
+    private Animator runningAnimations;
+    private AsyncInflater inflater;
+    private boolean inflatingUndo;
 
     public FragmentTransaction(ManagerBase manager) {
         this.manager = manager;
@@ -41,6 +41,14 @@ public class FragmentTransaction {
         return mode;
     }
 
+    List<StateChange> getChanges() {
+        return changes;
+    }
+
+    List<SharedElement> getSharedElements() {
+        return sharedElements;
+    }
+
     public void addStateChange(FragmentState state, StateChange.Change change) {
         changes.add(new StateChange(state, change));
     }
@@ -49,17 +57,177 @@ public class FragmentTransaction {
         sharedElements.add(sharedElement);
     }
 
+    /**
+     * Enables inflating views of fragments added by this transaction on background threads. Views of all
+     * added fragments are inflated in parallel and the transaction is executed on the main thread when all
+     * of them are ready. Can be enabled for a fragment class with {@link FragmentAnnotation#asyncInflation()}.
+     * Fragment's onCreateView() has to be safe to call on a background thread.
+     */
+    public void setAsyncInflation(boolean asyncInflation) {
+        this.asyncInflation = asyncInflation;
+    }
+
+    public boolean isAsyncInflation() {
+        return asyncInflation;
+    }
+
+    private boolean isAsyncInflation(Class<? extends Fragment> fragmentClass) {
+        return asyncInflation || FragmentClassRegistry.get(fragmentClass).asyncInflation;
+    }
+
+    /**
+     * @param change change which starts a fragment (Add for execute, Remove for undo)
+     * @return states which will be started and which have no fragment yet
+     */
+    private List<FragmentState> getStatesToInflate(StateChange.Change change) {
+        List<FragmentState> states = null;
+        for (StateChange stateChange : changes) {
+            FragmentState state = stateChange.getState();
+            if (stateChange.getChange() != change || state.getFragment() != null || !isAsyncInflation(state.getFragmentClass()))
+                continue;
+            if (states == null)
+                states = new ArrayList<>();
+            states.add(state);
+        }
+        return states;
+    }
+
+    /**
+     * Executes the transaction or, if the manager batches transactions, merges it with other transactions
+     * committed in this main looper pass.
+     *
+     * @see ManagerBase#setTransactionBatching(boolean)
+     */
+    public void commit() {
+        manager.commit(this);
+    }
+
+    boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Appends changes of another transaction. A removal of a state added by this transaction cancels both
+     * changes.
+     */
+    void merge(FragmentTransaction transaction) {
+        for (StateChange stateChange : transaction.changes) {
+            FragmentState state = stateChange.getState();
+            if (stateChange.getChange() == StateChange.Change.Remove && removeChange(state))
+                continue;
+            changes.add(stateChange);
+        }
+        sharedElements.addAll(transaction.sharedElements);
+        asyncInflation |= transaction.asyncInflation;
+    }
+
+    /**
+     * Removes a change of the state. Returns true if the state was added by this transaction.
+     */
+    private boolean removeChange(FragmentState state) {
+        for (int i = changes.size() - 1; i >= 0; i--) {
+            StateChange stateChange = changes.get(i);
+            if (stateChange.getState() == state) {
+                changes.remove(i);
+                return stateChange.getChange() == StateChange.Change.Add;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the most recently added state for a fragment or for a container. The fragment has the priority.
+     */
+    FragmentState findAddedState(Fragment fragment, int layoutId, String tag) {
+        FragmentState containerState = null;
+        for (int i = changes.size() - 1; i >= 0; i--) {
+            StateChange stateChange = changes.get(i);
+            if (stateChange.getChange() != StateChange.Change.Add)
+                continue;
+            FragmentState state = stateChange.getState();
+            if (fragment != null && state.getFragment() == fragment)
+                return state;
+            if (containerState == null && (layoutId != NO_ID && state.layoutId == layoutId || tag != null && tag.equals(state.tag)))
+                containerState = state;
+        }
+        return containerState;
+    }
+
     public void execute() {
+        List<FragmentState> statesToInflate = getStatesToInflate(StateChange.Change.Add);
+        if (statesToInflate != null || manager.hasInflatingTransactions()) {
+            enqueue(statesToInflate, false);
+        } else {
+            executeNow();
+        }
+    }
+
+    /**
+     * Waits for views of added fragments before executing or undoing. Transactions are queued in the manager,
+     * so they run in the order they were committed, even if some of them don't inflate anything.
+     */
+    private void enqueue(List<FragmentState> statesToInflate, boolean undo) {
+        inflatingUndo = undo;
+        if (statesToInflate != null)
+            inflater = AsyncInflater.inflate(statesToInflate, manager.getActivity(), manager::executeInflatedTransactions);
+        manager.addInflatingTransaction(this);
+    }
+
+    boolean isInflatingUndo() {
+        return inflatingUndo;
+    }
+
+    boolean isInflated() {
+        return inflater == null || inflater.isDone();
+    }
+
+    /**
+     * Executes or undoes the transaction waiting for inflation. Views which aren't inflated yet are inflated
+     * on the main thread.
+     */
+    void runInflated() {
+        cancelInflation();
+        if (inflatingUndo) {
+            undoNow();
+        } else {
+            executeNow();
+        }
+    }
+
+    void cancelInflation() {
+        if (inflater != null)
+            inflater.cancel();
+        inflater = null;
+    }
+
+    private void executeNow() {
+        FragmentTracer tracer = FragmentTracers.tracer;
+        if (tracer == null) {
+            executeChanges();
+            return;
+        }
+        tracer.beginSection(FragmentTracer.EXECUTE, manager);
+        try {
+            executeChanges();
+        } finally {
+            tracer.endSection(FragmentTracer.EXECUTE, manager);
+        }
+    }
+
+    private void executeChanges() {
+        manager.finishRunningTransaction();
         List<Animator> animators = new ArrayList<>();
         List<Fragment> fragments = new ArrayList<>(manager.getFragments());
+        List<Fragment> addedFragments = new ArrayList<>();
 
         if (mode == TransactionMode.Join && !manager.backstack.isEmpty())
             removeJoinedFragments();
 
-        manager.backstack.add(this);
+        manager.pushTransaction(this);
         for (StateChange stateChange : changes) {
             if (stateChange.getChange() == StateChange.Change.Add) {
                 manager.startState(stateChange.getState(), stateChange.getChange());
+                addedFragments.add(stateChange.getState().getFragment());
                 Animator animator = manager.prepareAddAnimation(stateChange.getState(), stateChange.getState().getFragment().animateAdd());
                 if (animator != null)
                     animators.add(animator);
@@ -72,7 +240,7 @@ public class FragmentTransaction {
 
         fragments.addAll(manager.getFragments());
 
-        runAnimations(animators, fragments, false);
+        runAnimations(animators, fragments, addedFragments, false);
     }
 
     private void removeJoinedFragments() {
@@ -90,7 +258,7 @@ public class FragmentTransaction {
             }
 
             if (changes.isEmpty()) {
-                backstack.remove(backstack.size() - 1);
+                manager.popTransaction();
                 if (backstack.isEmpty())
                     return;
             }
@@ -98,8 +266,33 @@ public class FragmentTransaction {
     }
 
     public void undo() {
+        List<FragmentState> statesToInflate = getStatesToInflate(StateChange.Change.Remove);
+        if (statesToInflate != null || manager.hasInflatingTransactions()) {
+            enqueue(statesToInflate, true);
+        } else {
+            undoNow();
+        }
+    }
+
+    private void undoNow() {
+        FragmentTracer tracer = FragmentTracers.tracer;
+        if (tracer == null) {
+            undoChanges();
+            return;
+        }
+        tracer.beginSection(FragmentTracer.UNDO, manager);
+        try {
+            undoChanges();
+        } finally {
+            tracer.endSection(FragmentTracer.UNDO, manager);
+        }
+    }
+
+    private void undoChanges() {
+        manager.finishRunningTransaction();
         final List<Animator> animators = new ArrayList<>();
         List<Fragment> fragments = new ArrayList<>(manager.getFragments());
+        List<Fragment> addedFragments = new ArrayList<>();
 
         for (int i = changes.size() - 1; i >= 0; i--) {
             StateChange stateChange = changes.get(i);
@@ -109,6 +302,7 @@ public class FragmentTransaction {
                     animators.add(animator);
             } else {
                 manager.startState(stateChange.getState(), stateChange.getChange());
+                addedFragments.add(stateChange.getState().getFragment());
                 Animator animator = manager.prepareAddAnimation(stateChange.getState(), stateChange.getState().getFragment().animateStart());
                 if (animator != null)
                     animators.add(animator);
@@ -117,105 +311,96 @@ public class FragmentTransaction {
 
         fragments.addAll(manager.getFragments());
 
-        runAnimations(animators, fragments, true);
+        runAnimations(animators, fragments, addedFragments, true);
     }
 
-    private void runAnimations(final List<Animator> animators, final List<Fragment> fragments, final boolean reverse) {
-        final AtomicInteger notAttachedFragments = new AtomicInteger();
+    private void runAnimations(final List<Animator> animators, final List<Fragment> fragments, List<Fragment> addedFragments, final boolean reverse) {
+        manager.setRunningTransaction(this);
+        barrier = new AttachBarrier(manager, () -> {
+            barrier = null;
+            FragmentTracer tracer = FragmentTracers.tracer;
+            if (tracer != null)
+                tracer.beginSection(FragmentTracer.START_ANIMATIONS, manager);
+            try {
+                startAnimations(animators, fragments, reverse);
+            } finally {
+                if (tracer != null)
+                    tracer.endSection(FragmentTracer.START_ANIMATIONS, manager);
+            }
+        });
+        barrier.await(addedFragments);
+    }
 
-        notAttachedFragments.set(fragments.size());
+    private void startAnimations(List<Animator> animators, List<Fragment> fragments, boolean reverse) {
+        for (SharedElement e : sharedElements)
+            animators.add(e.start(fragments, reverse, manager.getRootView()));
+        if (animators.isEmpty()) {
+            onAnimationsFinished();
+            return;
+        }
+        // the set ends in its first frame, so the transaction waits for each of the animators
+        final int[] remaining = {animators.size()};
+        AnimatorListenerAdapter listener = new AnimatorListenerAdapter() {
+            @Override
+            public void onEnd() {
+                if (--remaining[0] == 0)
+                    onAnimationsFinished();
+            }
 
-        OnFragmentStateChangedListener listener = new OnFragmentStateChangedAdapter() {
             @Override
-            public void onAttachedChanged(boolean attached) {
-                synchronized (FragmentTransaction.this) {
-                    if (notAttachedFragments.get() == 0)
-                        FragmentTransaction.this.notify();
-                }
+            public void onCancel() {
+                onEnd();
             }
         };
-        for (Fragment f : fragments)
-            f.addOnFragmentStateChangedListener(listener);
-
-        new Thread() {
-            public void run() {
-                try {
-                    synchronized (FragmentTransaction.this) {
-                        boolean notAttached = false;
-                        do {
-                            for (Fragment f : fragments) {
-                                if (!f.isAttached()) {
-                                    notAttached = true;
-                                    break;
-                                }
-                            }
-                            if (notAttached)
-                                FragmentTransaction.this.wait();
-                        } while (notAttached);
-                        for (Fragment f : fragments)
-                            f.removeOnFragmentStateChangedListener(listener);
-
-                        Handler handler = FragmentManager.getHandler();
-                        handler.post(() -> {
-                            for (SharedElement e : sharedElements)
-                                animators.add(e.start(fragments, reverse, manager.getRootView()));
-                            AnimatorSet set = new AnimatorSet();
-                            set.addAll(animators);
-                            set.start();
-                        });
-                    }
-                } catch (InterruptedException e) {
-                }
-            }
-        }.start();
-    }
-
-    void save(Bundle bundle, List<FragmentState> allStates) {
-        int[] changes = new int[this.changes.size()];
-        int[] states = new int[this.changes.size()];
-        for (int i = 0; i < this.changes.size(); i++) {
-            StateChange change = this.changes.get(i);
-            changes[i] = change.getChange().ordinal();
-            if (!allStates.contains(change.getState()))
-                allStates.add(change.getState());
-            states[i] = allStates.indexOf(change.getState());
-        }
-
-        ArrayList<Bundle> sharedElementBundles = new ArrayList<>();
-        for (SharedElement sharedElement : sharedElements) {
-            Bundle sharedElementBundle = new Bundle();
-            sharedElementBundle.putString(SHARED_ELEMENT_CLASS, sharedElement.getClass().getName());
-            sharedElement.save(sharedElementBundle);
-            sharedElementBundles.add(sharedElementBundle);
-        }
-
-        bundle.putIntArray(CHANGES, changes);
-        bundle.putIntArray(STATES, states);
-        bundle.putInt(MODE, mode.ordinal());
-        bundle.putParcelableArrayList(SHARED_ELEMENTS, sharedElementBundles);
+        for (Animator animator : animators)
+            animator.addListener(listener);
+        AnimatorSet set = new AnimatorSet();
+        set.addAll(animators);
+        runningAnimations = set;
+        set.start();
     }
 
-    void restore(Bundle bundle, List<FragmentState> allStates) {
-        int[] changes = bundle.getIntArray(CHANGES);
-        int[] states = bundle.getIntArray(STATES);
-        mode = TransactionMode.values()[bundle.getInt(MODE)];
-        ArrayList<Bundle> sharedElementBundles = bundle.getParcelableArrayList(SHARED_ELEMENTS);
+    /**
+     * Drops references to animations, so transactions kept in the backstack don't hold removed fragments
+     */
+    private void onAnimationsFinished() {
+        runningAnimations = null;
+        manager.clearRunningTransaction(this);
+    }
 
-        if (changes == null || states == null || mode == null || sharedElementBundles == null)
-            throw new IllegalStateException("Cannot restore transaction, because some of restore data is missing");
+    /**
+     * Jumps animations of this transaction to their end, so its fragments reach their final lifecycle
+     * states right away. Animations still waiting for fragments to attach are started and ended.
+     */
+    void finishAnimations() {
+        AttachBarrier barrier = this.barrier;
+        this.barrier = null;
+        if (barrier != null)
+            barrier.finish();
+        Animator animations = runningAnimations;
+        runningAnimations = null;
+        if (animations != null)
+            animations.end();
+    }
 
-        for (int i = 0; i < changes.length; i++)
-            this.changes.add(new StateChange(allStates.get(states[i]), StateChange.Change.values()[changes[i]]));
+    static Bundle saveSharedElement(SharedElement sharedElement) {
+        Bundle sharedElementBundle = new Bundle();
+        sharedElementBundle.putString(SHARED_ELEMENT_CLASS, sharedElement.getClass().getName());
+        sharedElement.save(sharedElementBundle);
+        return sharedElementBundle;
+    }
 
-        for (Bundle sharedElementBundle : sharedElementBundles) {
-            String className = sharedElementBundle.getString(SHARED_ELEMENT_CLASS);
-            SharedElement sharedElement = null;
-            try {
-                sharedElement = (SharedElement) Class.forName(className).newInstance();
-                sharedElement.restore(sharedElementBundle);
-                sharedElements.add(sharedElement);
-            } catch (Exception e) {
-            }
+    /**
+     * @return restored shared element or null if the shared element couldn't be restored
+     */
+    static SharedElement restoreSharedElement(Bundle sharedElementBundle) {
+        String className = sharedElementBundle.getString(SHARED_ELEMENT_CLASS);
+        try {
+            SharedElement sharedElement = (SharedElement) FragmentClassRegistry.newInstance(className);
+            sharedElement.restore(sharedElementBundle);
+            return sharedElement;
+        } catch (Exception e) {
+            return null;
         }
     }
 
@@ -233,13 +418,21 @@ public class FragmentTransaction {
     }
 
     public <T extends Fragment> void add(Class<T> fragmentClass, int id) {
-        T fragment = Fragment.instantiate(fragmentClass, manager.getActivity(), null);
-        addStateChange(new FragmentState(fragment, id, null), StateChange.Change.Add);
+        addStateChange(newState(fragmentClass, id, null), StateChange.Change.Add);
     }
 
     public <T extends Fragment> void add(Class<T> fragmentClass, String tag) {
-        T fragment = Fragment.instantiate(fragmentClass, manager.getActivity(), null);
-        addStateChange(new FragmentState(fragment, NO_ID, tag), StateChange.Change.Add);
+        addStateChange(newState(fragmentClass, NO_ID, tag), StateChange.Change.Add);
+    }
+
+    /**
+     * Fragments inflated asynchronously or added while the manager batches transactions are instantiated
+     * when the transaction is executed. Others are instantiated right away.
+     */
+    private FragmentState newState(Class<? extends Fragment> fragmentClass, int id, String tag) {
+        if (isAsyncInflation(fragmentClass) || manager.isTransactionBatching())
+            return new FragmentState(fragmentClass, id, tag);
+        return new FragmentState(Fragment.instantiate(fragmentClass, manager.getActivity(), null), id, tag);
     }
 
 
@@ -248,45 +441,38 @@ public class FragmentTransaction {
     // -------------------
 
     public <T extends Fragment> void replace(T fragment, int id) {
-        replaceFragment(null, fragment, id, null);
+        replaceFragment(null, new FragmentState(fragment, id, null));
     }
 
     public <T extends Fragment> void replace(T fragment, @NonNull String tag) {
-        replaceFragment(null, fragment, NO_ID, tag);
+        replaceFragment(null, new FragmentState(fragment, NO_ID, tag));
     }
 
     public <T extends Fragment, T2 extends Fragment> void replace(T2 removeFragment, T fragment) {
-        replaceFragment(removeFragment, fragment, NO_ID, null);
+        replaceFragment(removeFragment, new FragmentState(fragment, NO_ID, null));
     }
 
     public <T extends Fragment> void replace(Class<T> fragmentClass, int id) {
-        T fragment = Fragment.instantiate(fragmentClass, manager.getActivity(), null);
-        replaceFragment(null, fragment, id, null);
+        replaceFragment(null, newState(fragmentClass, id, null));
     }
 
     public <T extends Fragment> void replace(Class<T> fragmentClass, @NonNull String tag) {
-        T fragment = Fragment.instantiate(fragmentClass, manager.getActivity(), null);
-        replaceFragment(null, fragment, NO_ID, tag);
+        replaceFragment(null, newState(fragmentClass, NO_ID, tag));
     }
 
     public <T extends Fragment, T2 extends Fragment> void replace(T2 removeFragment, Class<T> fragmentClass) {
-        T fragment = Fragment.instantiate(fragmentClass, manager.getActivity(), null);
-        replaceFragment(removeFragment, fragment, NO_ID, null);
+        replaceFragment(removeFragment, newState(fragmentClass, NO_ID, null));
     }
 
-    private void replaceFragment(Fragment removeFragment, Fragment fragment, int id, String tag) {
-        for (FragmentState state : manager.activeStates) {
-            if (state.getFragment() == removeFragment || state.layoutId == id || tag != null && tag.equals(state.tag)) {
-                addStateChange(state, StateChange.Change.Remove);
-                addStateChange(new FragmentState(fragment, id, tag), StateChange.Change.Add);
-                return;
-            }
-        }
-        if (id != NO_ID) {
-            add(fragment, id);
-        } else if (tag != null) {
-            add(fragment, tag);
+    private void replaceFragment(Fragment removeFragment, FragmentState newState) {
+        FragmentState state = manager.findState(removeFragment, newState.layoutId, newState.tag);
+        if (state != null) {
+            addStateChange(state, StateChange.Change.Remove);
+            addStateChange(newState, StateChange.Change.Add);
+            return;
         }
+        if (newState.layoutId != NO_ID || newState.tag != null)
+            addStateChange(newState, StateChange.Change.Add);
     }
 
 
@@ -307,11 +493,8 @@ public class FragmentTransaction {
     }
 
     private void removeFragment(Fragment removeFragment, int id, String tag) {
-        for (FragmentState state : manager.activeStates) {
-            if (state.getFragment() == removeFragment || state.layoutId == id || tag != null && tag.equals(state.tag)) {
-                addStateChange(state, StateChange.Change.Remove);
-                break;
-            }
-        }
+        FragmentState state = manager.findState(removeFragment, id, tag);
+        if (state != null)
+            addStateChange(state, StateChange.Change.Remove);
     }
 }
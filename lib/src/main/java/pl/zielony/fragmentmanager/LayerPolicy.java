@@ -0,0 +1,155 @@
+package pl.zielony.fragmentmanager;
+
+import android.view.View;
+
+import pl.zielony.animator.Animator;
+
+/**
+ * Decides which animated views get a hardware layer. A layer pays off only when the view is blended (alpha)
+ * or resampled (scale) - translated views are cheap to draw without one. Layers are also limited by a
+ * process-wide memory budget, estimated as 4 bytes per pixel of each layer.
+ */
+public class LayerPolicy {
+    public static final long DEFAULT_MEMORY_BUDGET = 3L * 1080 * 1920 * 4;
+    private static final int LAYER_PROPERTIES = Animator.PROPERTY_ALPHA | Animator.PROPERTY_SCALE;
+
+    private static long memoryBudget = DEFAULT_MEMORY_BUDGET;
+    private static final Stats stats = new Stats();
+
+    /**
+     * Layer counters. Returned objects are snapshots.
+     */
+    public static class Stats {
+        private int layersCreated, layersSkipped, layersDenied, layersInUse;
+        private long bytesEstimated, bytesInUse, peakBytesInUse;
+
+        /**
+         * @return number of layers created since the last reset
+         */
+        public int getLayersCreated() {
+            return layersCreated;
+        }
+
+        /**
+         * @return number of animations which didn't need a layer
+         */
+        public int getLayersSkipped() {
+            return layersSkipped;
+        }
+
+        /**
+         * @return number of layers not created because of the memory budget
+         */
+        public int getLayersDenied() {
+            return layersDenied;
+        }
+
+        public int getLayersInUse() {
+            return layersInUse;
+        }
+
+        /**
+         * @return estimated size of all layers created since the last reset
+         */
+        public long getBytesEstimated() {
+            return bytesEstimated;
+        }
+
+        public long getBytesInUse() {
+            return bytesInUse;
+        }
+
+        public long getPeakBytesInUse() {
+            return peakBytesInUse;
+        }
+
+        Stats copy() {
+            Stats copy = new Stats();
+            copy.layersCreated = layersCreated;
+            copy.layersSkipped = layersSkipped;
+            copy.layersDenied = layersDenied;
+            copy.layersInUse = layersInUse;
+            copy.bytesEstimated = bytesEstimated;
+            copy.bytesInUse = bytesInUse;
+            copy.peakBytesInUse = peakBytesInUse;
+            return copy;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "layersCreated=" + layersCreated +
+                    ", layersSkipped=" + layersSkipped +
+                    ", layersDenied=" + layersDenied +
+                    ", layersInUse=" + layersInUse +
+                    ", bytesEstimated=" + bytesEstimated +
+                    ", bytesInUse=" + bytesInUse +
+                    ", peakBytesInUse=" + peakBytesInUse +
+                    '}';
+        }
+    }
+
+    private LayerPolicy() {
+    }
+
+    public static boolean needsLayer(int animatedProperties) {
+        return (animatedProperties & LAYER_PROPERTIES) != 0;
+    }
+
+    /**
+     * Reserves memory for a layer of the view if the animated properties need one and the layer fits in
+     * the budget. Doesn't change the view's layer type.
+     *
+     * @return estimated size of the layer or 0 if the view shouldn't get a layer
+     */
+    static synchronized long acquire(View view, int animatedProperties) {
+        if (!needsLayer(animatedProperties)) {
+            stats.layersSkipped++;
+            return 0;
+        }
+        long bytes = 4L * Math.max(view.getWidth(), 1) * Math.max(view.getHeight(), 1);
+        if (stats.bytesInUse + bytes > memoryBudget) {
+            stats.layersDenied++;
+            return 0;
+        }
+        stats.layersCreated++;
+        stats.layersInUse++;
+        stats.bytesEstimated += bytes;
+        stats.bytesInUse += bytes;
+        stats.peakBytesInUse = Math.max(stats.peakBytesInUse, stats.bytesInUse);
+        return bytes;
+    }
+
+    static synchronized void release(long bytes) {
+        if (bytes <= 0)
+            return;
+        stats.layersInUse = Math.max(0, stats.layersInUse - 1);
+        stats.bytesInUse = Math.max(0, stats.bytesInUse - bytes);
+    }
+
+    /**
+     * Sets how much memory animation layers can use at once, in bytes
+     */
+    public static synchronized void setMemoryBudget(long memoryBudget) {
+        LayerPolicy.memoryBudget = memoryBudget;
+    }
+
+    public static synchronized long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public static synchronized Stats getStats() {
+        return stats.copy();
+    }
+
+    /**
+     * Resets counters. Layers in use are still accounted for.
+     */
+    public static synchronized void resetStats() {
+        stats.layersCreated = 0;
+        stats.layersSkipped = 0;
+        stats.layersDenied = 0;
+        stats.bytesEstimated = 0;
+        stats.peakBytesInUse = stats.bytesInUse;
+    }
+}
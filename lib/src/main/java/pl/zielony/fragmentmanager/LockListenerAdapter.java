@@ -1,17 +1,31 @@
 package pl.zielony.fragmentmanager;
 
+import pl.zielony.animator.Animator;
 import pl.zielony.animator.AnimatorListener;
 
 class LockListenerAdapter implements AnimatorListener {
     private FragmentRootView rootView;
+    private Animator animator;
 
     LockListenerAdapter(FragmentRootView rootView) {
         this.rootView = rootView;
     }
 
+    /**
+     * @param animator animator declaring properties used to choose the layer type of the root view
+     */
+    LockListenerAdapter(FragmentRootView rootView, Animator animator) {
+        this.rootView = rootView;
+        this.animator = animator;
+    }
+
     @Override
     public void onStart() {
-        rootView.enterAnimationMode();
+        if (animator != null) {
+            rootView.enterAnimationMode(animator.getAnimatedProperties());
+        } else {
+            rootView.enterAnimationMode();
+        }
     }
 
     @Override
@@ -9,17 +9,27 @@ import android.os.Looper;
 import android.support.annotation.DimenRes;
 import android.support.annotation.NonNull;
 import android.support.annotation.StringRes;
+import android.util.SparseArray;
 import android.view.KeyEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewParent;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import pl.zielony.animator.Animator;
 import pl.zielony.animator.AnimatorListenerAdapter;
+import pl.zielony.statemachine.OnStateChangeListener;
+import pl.zielony.statemachine.OnTryChangeListener;
 import pl.zielony.statemachine.StateMachine;
 
+import static android.view.View.NO_ID;
+
 /**
  * Created by Marcin on 2016-10-03.
  */
@@ -28,6 +38,8 @@ public abstract class ManagerBase {
     private static final String ACTIVE_STATES = ManagerBase.class.getName() + "fragmentManagerActiveStates";
     private static final String STATES = ManagerBase.class.getName() + "fragmentManagerStates";
     private static final String TRANSACTIONS = ManagerBase.class.getName() + "fragmentManagerTransactions";
+    private static final String SHARED_ELEMENTS = ManagerBase.class.getName() + "fragmentManagerSharedElements";
+    private static final String SPILL_SESSION = ManagerBase.class.getName() + "fragmentManagerSpillSession";
     protected static final String USER_STATE = ManagerBase.class.getName() + "userState";
 
     public static final int STATE_CREATED = 1;
@@ -35,8 +47,48 @@ public abstract class ManagerBase {
     public static final int STATE_STARTED = 3;
     public static final int STATE_RESUMED = 4;
 
+    public static final int DEFAULT_BACKSTACK_DEPTH = Integer.MAX_VALUE;
+    public static final int DEFAULT_SPILL_THRESHOLD = Integer.MAX_VALUE;
+
     List<FragmentTransaction> backstack = new ArrayList<>();
-    List<FragmentState> activeStates = new ArrayList<>();
+    private int backstackDepth = DEFAULT_BACKSTACK_DEPTH;
+    private int backstackBytes = Integer.MAX_VALUE;
+    private int spillThreshold = DEFAULT_SPILL_THRESHOLD;
+    private String spillSession;
+    private boolean backstackDirty = true;
+
+    /**
+     * Numbers of non-Join and Push transactions in the backstack and numbers of active child fragments
+     * which can go back or up. Kept up to date, so hasBack() and hasUp() don't have to traverse the tree.
+     */
+    private int backTransactions, upTransactions;
+    private int childrenWithBack, childrenWithUp;
+    private BackstackSnapshot backstackSnapshot;
+    private static final FragmentState[] NO_STATES = new FragmentState[0];
+
+    /**
+     * Copy-on-write snapshot of active states. Rebuilt only when a state is added or removed, so readers can
+     * iterate it without locking and without copying.
+     */
+    volatile FragmentState[] activeStates = NO_STATES;
+    ActiveStateIndex activeStateIndex = new ActiveStateIndex();
+    private final Object stateLock = new Object();
+    List<AttachBarrier> attachBarriers = new ArrayList<>();
+
+    private static boolean strictContainerValidation = false;
+    private final SparseArray<ViewGroup> containersById = new SparseArray<>();
+    private final Map<String, ViewGroup> containersByTag = new HashMap<>();
+
+    /**
+     * Transactions animate one at a time. A new transaction fast-forwards the animations of the previous
+     * one, so rapid navigation doesn't stack overlapping animations.
+     */
+    private FragmentTransaction runningTransaction;
+
+    private boolean transactionBatching = false;
+    private FragmentTransaction pendingTransaction;
+    private final List<FragmentTransaction> inflatingTransactions = new ArrayList<>();
+    private final Runnable executePendingTransaction = this::executePendingTransaction;
 
     Activity activity;
     private static Handler handler = new Handler(Looper.getMainLooper());
@@ -52,6 +104,52 @@ public abstract class ManagerBase {
         stateMachine = new StateMachine();
     }
 
+    /**
+     * Adds an edge of the lifecycle state machine. The listener runs in a traced section named after the
+     * lifecycle callback.
+     */
+    void addLifecycleEdge(int from, int to, OnTryChangeListener condition, OnStateChangeListener listener) {
+        String section = lifecycleSection(from, to);
+        stateMachine.addEdge(from, to, condition, state -> {
+            FragmentTracer tracer = FragmentTracers.tracer;
+            if (tracer == null) {
+                listener.onStateChange(state);
+                return;
+            }
+            tracer.beginSection(section, this);
+            try {
+                listener.onStateChange(state);
+            } finally {
+                tracer.endSection(section, this);
+            }
+        });
+    }
+
+    private static String lifecycleSection(int from, int to) {
+        if (to > from) {
+            switch (to) {
+                case STATE_CREATED:
+                    return FragmentTracer.ON_CREATE;
+                case STATE_ATTACHED:
+                    return FragmentTracer.ON_ATTACH;
+                case STATE_STARTED:
+                    return FragmentTracer.ON_START;
+                default:
+                    return FragmentTracer.ON_RESUME;
+            }
+        }
+        switch (from) {
+            case STATE_RESUMED:
+                return FragmentTracer.ON_PAUSE;
+            case STATE_STARTED:
+                return FragmentTracer.ON_STOP;
+            case STATE_ATTACHED:
+                return FragmentTracer.ON_DETACH;
+            default:
+                return FragmentTracer.ON_DESTROY;
+        }
+    }
+
 
     // -------------------
     // add
@@ -60,25 +158,25 @@ public abstract class ManagerBase {
     public <T extends Fragment> void add(T fragment, int id, TransactionMode mode) {
         FragmentTransaction transaction = new FragmentTransaction(this, mode);
         transaction.add(fragment, id);
-        transaction.execute();
+        commit(transaction);
     }
 
     public <T extends Fragment> void add(T fragment, String tag, TransactionMode mode) {
         FragmentTransaction transaction = new FragmentTransaction(this, mode);
         transaction.add(fragment, tag);
-        transaction.execute();
+        commit(transaction);
     }
 
     public <T extends Fragment> void add(Class<T> fragmentClass, int id, TransactionMode mode) {
         FragmentTransaction transaction = new FragmentTransaction(this, mode);
         transaction.add(fragmentClass, id);
-        transaction.execute();
+        commit(transaction);
     }
 
     public <T extends Fragment> void add(Class<T> fragmentClass, String tag, TransactionMode mode) {
         FragmentTransaction transaction = new FragmentTransaction(this, mode);
         transaction.add(fragmentClass, tag);
-        transaction.execute();
+        commit(transaction);
     }
 
 
@@ -89,37 +187,37 @@ public abstract class ManagerBase {
     public <T extends Fragment> void replace(T fragment, int id, TransactionMode mode) {
         FragmentTransaction transaction = new FragmentTransaction(this, mode);
         transaction.replace(fragment, id);
-        transaction.execute();
+        commit(transaction);
     }
 
     public <T extends Fragment> void replace(T fragment, String tag, TransactionMode mode) {
         FragmentTransaction transaction = new FragmentTransaction(this, mode);
         transaction.replace(fragment, tag);
-        transaction.execute();
+        commit(transaction);
     }
 
     public <T extends Fragment, T2 extends Fragment> void replace(T2 removeFragment, T fragment, TransactionMode mode) {
         FragmentTransaction transaction = new FragmentTransaction(this, mode);
         transaction.replace(removeFragment, fragment);
-        transaction.execute();
+        commit(transaction);
     }
 
     public <T extends Fragment> void replace(Class<T> fragmentClass, int id, TransactionMode mode) {
         FragmentTransaction transaction = new FragmentTransaction(this, mode);
         transaction.replace(fragmentClass, id);
-        transaction.execute();
+        commit(transaction);
     }
 
     public <T extends Fragment> void replace(Class<T> fragmentClass, String tag, TransactionMode mode) {
         FragmentTransaction transaction = new FragmentTransaction(this, mode);
         transaction.replace(fragmentClass, tag);
-        transaction.execute();
+        commit(transaction);
     }
 
     public <T extends Fragment, T2 extends Fragment> void replace(T2 removeFragment, Class<T> fragmentClass, TransactionMode mode) {
         FragmentTransaction transaction = new FragmentTransaction(this, mode);
         transaction.replace(removeFragment, fragmentClass);
-        transaction.execute();
+        commit(transaction);
     }
 
 
@@ -130,30 +228,128 @@ public abstract class ManagerBase {
     public void remove(int id, TransactionMode mode) {
         FragmentTransaction transaction = new FragmentTransaction(this, mode);
         transaction.remove(id);
-        transaction.execute();
+        commit(transaction);
     }
 
     public void remove(String tag, TransactionMode mode) {
         FragmentTransaction transaction = new FragmentTransaction(this, mode);
         transaction.remove(tag);
-        transaction.execute();
+        commit(transaction);
     }
 
     public <T extends Fragment> void remove(T fragment, TransactionMode mode) {
         FragmentTransaction transaction = new FragmentTransaction(this, mode);
         transaction.remove(fragment);
-        transaction.execute();
+        commit(transaction);
+    }
+
+    // -------------------
+    // batching
+    // -------------------
+
+    /**
+     * Enables merging of all transactions committed in one main looper pass into a single transaction.
+     * Fragments added and removed in the same pass are never instantiated and the merged transaction runs
+     * with one set of animations. Pending transactions are executed before navigating back or up and before
+     * saving the state.
+     */
+    public void setTransactionBatching(boolean transactionBatching) {
+        if (!transactionBatching)
+            executePendingTransaction();
+        this.transactionBatching = transactionBatching;
+    }
+
+    public boolean isTransactionBatching() {
+        return transactionBatching;
+    }
+
+    void commit(FragmentTransaction transaction) {
+        if (!transactionBatching) {
+            transaction.execute();
+            return;
+        }
+        if (pendingTransaction != null && pendingTransaction.getMode() != transaction.getMode())
+            executePendingTransaction();
+        if (pendingTransaction == null) {
+            pendingTransaction = transaction;
+            handler.post(executePendingTransaction);
+        } else {
+            pendingTransaction.merge(transaction);
+        }
+    }
+
+    /**
+     * Executes the transaction merged from batched commits right away instead of waiting for the next
+     * main looper pass
+     */
+    public void executePendingTransaction() {
+        FragmentTransaction transaction = pendingTransaction;
+        if (transaction == null)
+            return;
+        handler.removeCallbacks(executePendingTransaction);
+        pendingTransaction = null;
+        if (!transaction.isEmpty())
+            transaction.execute();
+    }
+
+    boolean hasInflatingTransactions() {
+        return !inflatingTransactions.isEmpty();
+    }
+
+    void addInflatingTransaction(FragmentTransaction transaction) {
+        inflatingTransactions.add(transaction);
+    }
+
+    /**
+     * Runs transactions from the head of the queue which have their views ready
+     */
+    void executeInflatedTransactions() {
+        while (!inflatingTransactions.isEmpty() && inflatingTransactions.get(0).isInflated())
+            inflatingTransactions.remove(0).runInflated();
+    }
+
+    /**
+     * Runs batched and inflating transactions right away. Called before navigating and saving, so these
+     * see the backstack in the order the transactions were committed.
+     */
+    private void flushTransactions() {
+        executePendingTransaction();
+        while (!inflatingTransactions.isEmpty())
+            inflatingTransactions.remove(0).runInflated();
+    }
+
+    /**
+     * Finds a state which will be active after pending and inflating transactions are executed. Used to build
+     * transactions which refer to fragments added by a transaction which didn't run yet.
+     */
+    FragmentState findState(Fragment fragment, int layoutId, String tag) {
+        if (pendingTransaction != null) {
+            FragmentState state = pendingTransaction.findAddedState(fragment, layoutId, tag);
+            if (state != null)
+                return state;
+        }
+        for (int i = inflatingTransactions.size() - 1; i >= 0; i--) {
+            FragmentTransaction transaction = inflatingTransactions.get(i);
+            if (transaction.isInflatingUndo())
+                continue;
+            FragmentState state = transaction.findAddedState(fragment, layoutId, tag);
+            if (state != null)
+                return state;
+        }
+        return findActiveState(fragment, layoutId, tag);
     }
 
     public boolean upTraverse() {
-        for (int i = activeStates.size() - 1; i >= 0; i--) {
-            if (activeStates.get(i).getFragment().up())
+        flushTransactions();
+        FragmentState[] states = activeStates;
+        for (int i = states.length - 1; i >= 0; i--) {
+            if (states[i].getFragment().up())
                 return true;
         }
         if (!hasUp())
             return false;
         while (backstack.size() != 0) {
-            FragmentTransaction transaction = backstack.remove(backstack.size() - 1);
+            FragmentTransaction transaction = popTransaction();
             TransactionMode mode = transaction.getMode();
             transaction.undo();
             if (mode == TransactionMode.Push)
@@ -163,14 +359,16 @@ public abstract class ManagerBase {
     }
 
     public boolean up() {
-        for (int i = activeStates.size() - 1; i >= 0; i--) {
-            if (activeStates.get(i).getFragment().upTraverse())
+        flushTransactions();
+        FragmentState[] states = activeStates;
+        for (int i = states.length - 1; i >= 0; i--) {
+            if (states[i].getFragment().upTraverse())
                 return true;
         }
         if (!hasUp())
             return false;
         while (backstack.size() != 0) {
-            FragmentTransaction transaction = backstack.remove(backstack.size() - 1);
+            FragmentTransaction transaction = popTransaction();
             TransactionMode mode = transaction.getMode();
             transaction.undo();
             if (mode == TransactionMode.Push)
@@ -185,8 +383,10 @@ public abstract class ManagerBase {
      * @return if back could pop one complete step
      */
     public boolean backTraverse() {
-        for (int i = activeStates.size() - 1; i >= 0; i--) {
-            if (activeStates.get(i).getFragment().backTraverse())
+        flushTransactions();
+        FragmentState[] states = activeStates;
+        for (int i = states.length - 1; i >= 0; i--) {
+            if (states[i].getFragment().backTraverse())
                 return true;
         }
         return back();
@@ -199,10 +399,11 @@ public abstract class ManagerBase {
      * @return if back could pop one complete step
      */
     public boolean back() {
+        flushTransactions();
         if (!hasBack())
             return false;
         while (backstack.size() != 0) {
-            FragmentTransaction transaction = backstack.remove(backstack.size() - 1);
+            FragmentTransaction transaction = popTransaction();
             TransactionMode mode = transaction.getMode();
             transaction.undo();
             if (mode != TransactionMode.Join)
@@ -211,7 +412,40 @@ public abstract class ManagerBase {
         return false;
     }
 
-    void startState(final FragmentState state, StateChange.Change change) {
+    void setRunningTransaction(FragmentTransaction transaction) {
+        runningTransaction = transaction;
+    }
+
+    void clearRunningTransaction(FragmentTransaction transaction) {
+        if (runningTransaction == transaction)
+            runningTransaction = null;
+    }
+
+    /**
+     * Ends animations of the previous transaction, so its fragments settle before the next one starts
+     */
+    void finishRunningTransaction() {
+        FragmentTransaction transaction = runningTransaction;
+        runningTransaction = null;
+        if (transaction != null)
+            transaction.finishAnimations();
+    }
+
+    void startState(FragmentState state, StateChange.Change change) {
+        FragmentTracer tracer = FragmentTracers.tracer;
+        if (tracer == null) {
+            startStateNow(state, change);
+            return;
+        }
+        tracer.beginSection(FragmentTracer.START_STATE, this);
+        try {
+            startStateNow(state, change);
+        } finally {
+            tracer.endSection(FragmentTracer.START_STATE, this);
+        }
+    }
+
+    private void startStateNow(FragmentState state, StateChange.Change change) {
         if (state.getFragment() == null)
             state.instantiateFragment(activity);
         Fragment fragment = state.getFragment();
@@ -221,9 +455,7 @@ public abstract class ManagerBase {
         final View view = fragment.getView();
         view.setVisibility(View.INVISIBLE);
         fragment.setManager(this);
-        synchronized (ManagerBase.class) {
-            activeStates.add(state);
-        }
+        addActiveState(state);
         ViewGroup container = getContainer(state, getRootView());
         if (change == StateChange.Change.Add) {
             container.addView(rootView);
@@ -233,14 +465,12 @@ public abstract class ManagerBase {
         Bundle result = Fragment.getResult(fragment.getId());
         if (result != null)
             fragment.onResult(result);
-        synchronized (ManagerBase.class) {
-            if (isStarted())
-                fragment.start();
-        }
+        if (isStarted())
+            fragment.start();
     }
 
     Animator prepareAddAnimation(final FragmentState state, final Animator animator) {
-        Fragment fragment = state.getFragment();
+        final Fragment fragment = state.getFragment();
         final View view = fragment.getView();
         if (!isResumed()) {
             view.setVisibility(View.VISIBLE);
@@ -248,15 +478,17 @@ public abstract class ManagerBase {
             return null;
         }
         if (animator != null) {
-            animator.addListener(fragment.getRootView().getLockListenerAdapter());
+            animator.addListener(new LockListenerAdapter(fragment.getRootView(), animator));
             animator.addListener(new AnimatorListenerAdapter() {
                 @Override
                 public void onStart() {
+                    traceEvent(FragmentTracer.ANIMATION_START, fragment);
                     view.setVisibility(View.VISIBLE);
                 }
 
                 @Override
                 public void onEnd() {
+                    traceEvent(FragmentTracer.ANIMATION_END, fragment);
                     resumeState(state);
                 }
             });
@@ -268,10 +500,8 @@ public abstract class ManagerBase {
     }
 
     private void resumeState(FragmentState state) {
-        synchronized (ManagerBase.class) {
-            if (isResumed())
-                state.getFragment().resume();
-        }
+        if (isResumed())
+            state.getFragment().resume();
     }
 
     Animator prepareRemoveAnimation(final FragmentState state, final Animator animator) {
@@ -283,10 +513,16 @@ public abstract class ManagerBase {
             return null;
         }
         if (animator != null) {
-            animator.addListener(fragment.getRootView().getLockListenerAdapter());
+            animator.addListener(new LockListenerAdapter(fragment.getRootView(), animator));
             animator.addListener(new AnimatorListenerAdapter() {
+                @Override
+                public void onStart() {
+                    traceEvent(FragmentTracer.ANIMATION_START, fragment);
+                }
+
                 @Override
                 public void onEnd() {
+                    traceEvent(FragmentTracer.ANIMATION_END, fragment);
                     view.setVisibility(View.INVISIBLE);
                     removeState(state);
                 }
@@ -298,48 +534,285 @@ public abstract class ManagerBase {
         return animator;
     }
 
+    private static void traceEvent(String name, Object owner) {
+        FragmentTracer tracer = FragmentTracers.tracer;
+        if (tracer != null)
+            tracer.event(name, owner);
+    }
+
     private void removeState(FragmentState state) {
+        FragmentTracer tracer = FragmentTracers.tracer;
+        if (tracer == null) {
+            removeStateNow(state);
+            return;
+        }
+        tracer.beginSection(FragmentTracer.REMOVE_STATE, this);
+        try {
+            removeStateNow(state);
+        } finally {
+            tracer.endSection(FragmentTracer.REMOVE_STATE, this);
+        }
+    }
+
+    private void removeStateNow(FragmentState state) {
         final Fragment fragment = state.getFragment();
         final View rootView = fragment.getRootView();
         final ViewGroup container = (ViewGroup) rootView.getParent();
-        if (container == null || !activeStates.contains(state))
+        if (container == null || !isActive(state))
             throw new IllegalStateException("Fragment's container has to be in use");
         state.save();
         fragment.pause();
         fragment.stop();
         fragment.detach();
+        removeActiveState(state);
         fragment.destroy();
-        synchronized (ManagerBase.class) {
-            activeStates.remove(state);
-        }
         state.clearFragment();
+        trimBackstack();
+        for (int i = attachBarriers.size() - 1; i >= 0; i--)
+            attachBarriers.get(i).onFragmentRemoved(fragment);
         FragmentPool.put(fragment);
     }
 
-    public boolean hasBack() {
-        for (FragmentState state : activeStates)
-            if (state.getFragment().hasBack())
-                return true;
-        for (FragmentTransaction transaction : backstack)
-            if (transaction.getMode() != TransactionMode.Join)
-                return true;
+    // -------------------
+    // backstack budget
+    // -------------------
 
-        return false;
+    /**
+     * Sets how many of the most recent backstack entries keep complete saved state of their fragments.
+     * Fragments of older entries keep only their class, container and @State fields, so view hierarchy
+     * state (like scroll positions), user state and child fragments are not restored when going back to
+     * them. There's no limit by default.
+     */
+    public void setBackstackDepth(int backstackDepth) {
+        this.backstackDepth = backstackDepth;
+        trimBackstack();
+    }
+
+    public int getBackstackDepth() {
+        return backstackDepth;
+    }
+
+    /**
+     * Sets how many bytes of saved state the backstack can keep. When exceeded, the oldest entries are
+     * compacted just like entries deeper than {@link #setBackstackDepth(int)}. Measuring requires parceling
+     * saved states, so there's no limit by default.
+     */
+    public void setBackstackBytes(int backstackBytes) {
+        this.backstackBytes = backstackBytes;
+        trimBackstack();
+    }
+
+    public int getBackstackBytes() {
+        return backstackBytes;
+    }
+
+    /**
+     * Compacts saved states of backstack entries which don't fit in the depth and byte limits. States are
+     * visited from the most recent entry, so a state used by more than one entry counts as recent.
+     */
+    void trimBackstack() {
+        if (backstackDepth == Integer.MAX_VALUE && backstackBytes == Integer.MAX_VALUE)
+            return;
+        boolean measure = backstackBytes != Integer.MAX_VALUE;
+        if (!measure && backstack.size() <= backstackDepth)
+            return;   // no entry is deep enough to be compacted
+        int bytes = 0;
+        Set<FragmentState> visited = new HashSet<>();
+        for (int i = backstack.size() - 1, depth = 0; i >= 0; i--, depth++) {
+            for (StateChange change : backstack.get(i).getChanges()) {
+                FragmentState state = change.getState();
+                if (!visited.add(state) || state.getFragment() != null)
+                    continue;
+                if (depth >= backstackDepth) {
+                    state.compact();
+                } else if (measure) {
+                    int size = state.getStateSize();
+                    if (bytes + size > backstackBytes) {
+                        state.compact();
+                        size = state.getStateSize();
+                    }
+                    bytes += size;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets how many bytes of states of removed fragments can be saved to the Activity's state. When exceeded,
+     * the oldest of these states are written to the cache directory and read back when going back to them.
+     * Measuring requires parceling saved states, so spilling is disabled by default (Integer.MAX_VALUE).
+     */
+    public void setSpillThreshold(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    public int getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    /**
+     * Spills the oldest states of removed fragments until the rest fits in the threshold. Bundles of spilled
+     * states are replaced with bundles pointing to the files.
+     */
+    private void spillStates(List<FragmentState> states, List<Bundle> stateBundles) {
+        if (spillThreshold == Integer.MAX_VALUE || activity == null)
+            return;
+        int bytes = 0;
+        for (FragmentState state : states) {
+            if (state.getFragment() == null)
+                bytes += state.getStateSize();
+        }
+        for (int i = 0; i < states.size() && bytes > spillThreshold; i++) {
+            FragmentState state = states.get(i);
+            if (state.getFragment() != null)
+                continue;
+            int size = state.getStateSize();
+            state.spill(activity, getSpillSession());
+            bytes -= size - state.getStateSize();
+            stateBundles.set(i, state.save());
+        }
+    }
+
+    /**
+     * @return directory of files spilled by this manager's tree. Kept by the top manager and saved with its
+     * state.
+     */
+    String getSpillSession() {
+        if (spillSession == null)
+            spillSession = StateSpill.newSession();
+        return spillSession;
+    }
+
+    /**
+     * Deletes states spilled by this manager and its children. Has to be called when the activity finishes
+     * and its saved state won't be restored anymore. FragmentActivity does it in onDestroy().
+     */
+    public void deleteSpilledStates() {
+        if (spillSession != null && activity != null)
+            StateSpill.deleteSession(activity, spillSession);
+        spillSession = null;
+    }
+
+    public boolean hasBack() {
+        return backTransactions > 0 || childrenWithBack > 0;
     }
 
     public boolean hasUp() {
-        for (FragmentState state : activeStates)
-            if (state.getFragment().hasUp())
-                return true;
-        for (FragmentTransaction transaction : backstack)
-            if (transaction.getMode() == TransactionMode.Push)
-                return true;
+        return upTransactions > 0 || childrenWithUp > 0;
+    }
 
-        return false;
+    void pushTransaction(FragmentTransaction transaction) {
+        boolean hadBack = hasBack(), hadUp = hasUp();
+        backstack.add(transaction);
+        countTransaction(transaction, 1);
+        onNavigationChanged(hadBack, hadUp);
+        onBackstackChanged();
+    }
+
+    FragmentTransaction popTransaction() {
+        boolean hadBack = hasBack(), hadUp = hasUp();
+        FragmentTransaction transaction = backstack.remove(backstack.size() - 1);
+        countTransaction(transaction, -1);
+        onNavigationChanged(hadBack, hadUp);
+        onBackstackChanged();
+        return transaction;
+    }
+
+    private void countTransaction(FragmentTransaction transaction, int delta) {
+        if (transaction.getMode() != TransactionMode.Join)
+            backTransactions += delta;
+        if (transaction.getMode() == TransactionMode.Push)
+            upTransactions += delta;
+    }
+
+    private void countChild(Fragment fragment, int delta) {
+        boolean hadBack = hasBack(), hadUp = hasUp();
+        if (fragment.hasBack())
+            childrenWithBack += delta;
+        if (fragment.hasUp())
+            childrenWithUp += delta;
+        onNavigationChanged(hadBack, hadUp);
+    }
+
+    /**
+     * @return manager which keeps this manager as an active fragment
+     */
+    ManagerBase getParent() {
+        return null;
+    }
+
+    /**
+     * Updates counters of parent managers after hasBack() or hasUp() of this manager changed
+     */
+    private void onNavigationChanged(boolean hadBack, boolean hadUp) {
+        boolean back = hasBack(), up = hasUp();
+        ManagerBase parent = getParent();
+        if (parent == null || back == hadBack && up == hadUp)
+            return;
+        boolean parentHadBack = parent.hasBack(), parentHadUp = parent.hasUp();
+        if (back != hadBack)
+            parent.childrenWithBack += back ? 1 : -1;
+        if (up != hadUp)
+            parent.childrenWithUp += up ? 1 : -1;
+        parent.onNavigationChanged(parentHadBack, parentHadUp);
+    }
+
+    /**
+     * Enables checking that no active fragment contains a view with the container's id or tag on each
+     * fragment start. It searches views of all active fragments, so it's meant for debug builds. By default
+     * only the found container is checked not to be nested in a fragment.
+     */
+    public static void setStrictContainerValidation(boolean strictContainerValidation) {
+        ManagerBase.strictContainerValidation = strictContainerValidation;
+    }
+
+    public static boolean isStrictContainerValidation() {
+        return strictContainerValidation;
     }
 
     @NonNull
     private ViewGroup getContainer(FragmentState state, View root) {
+        ViewGroup container = state.layoutId != NO_ID ? containersById.get(state.layoutId) : state.tag != null ? containersByTag.get(state.tag) : null;
+        if (container == null || !isContainerValid(container, state, root)) {
+            container = findContainer(state, root);
+            if (state.layoutId != NO_ID) {
+                containersById.put(state.layoutId, container);
+            } else if (state.tag != null) {
+                containersByTag.put(state.tag, container);
+            }
+        }
+        if (strictContainerValidation)
+            validateContainer(state);
+        return container;
+    }
+
+    /**
+     * Checks if a cached container still has the id or tag and is still placed in this manager's layout.
+     * Walking to the root also checks that the container is not nested in a fragment.
+     */
+    private static boolean isContainerValid(ViewGroup container, FragmentState state, View root) {
+        if (state.layoutId != NO_ID ? container.getId() != state.layoutId : !state.tag.equals(container.getTag()))
+            return false;
+        return !isNested(container, root);
+    }
+
+    /**
+     * @return true if the view is not in the root's hierarchy or is in a fragment's hierarchy
+     */
+    private static boolean isNested(View view, View root) {
+        if (view == root)
+            return false;
+        ViewParent parent = view.getParent();
+        while (parent != root) {
+            if (!(parent instanceof View) || parent instanceof FragmentRootView)
+                return true;
+            parent = parent.getParent();
+        }
+        return false;
+    }
+
+    @NonNull
+    private ViewGroup findContainer(FragmentState state, View root) {
         View v = root.findViewById(state.layoutId);
         if (v == null)
             v = root.findViewWithTag(state.tag);
@@ -347,6 +820,12 @@ public abstract class ManagerBase {
             throw new InvalidTransactionException("Unable to find layout (id: " + state.layoutId + ", tag: " + state.tag + ")");
         if (!(v instanceof ViewGroup))
             throw new InvalidTransactionException("Not a ViewGroup (id: " + state.layoutId + ", tag: " + state.tag + ")");
+        if (isNested(v, root))
+            throw new InvalidTransactionException("Layout (id: " + state.layoutId + ", tag: " + state.tag + ") is not a child of this fragment. Use child fragment manager instead");
+        return (ViewGroup) v;
+    }
+
+    private void validateContainer(FragmentState state) {
         for (FragmentState fs : activeStates) {
             View view = fs.getFragment().getView();
             if (view.findViewById(state.layoutId) != null)
@@ -354,39 +833,91 @@ public abstract class ManagerBase {
             if (view.findViewWithTag(state.tag) != null)
                 throw new InvalidTransactionException("Layout (id: " + state.layoutId + ", tag: " + state.tag + ") is not a child of this fragment. Use child fragment manager instead");
         }
-        return (ViewGroup) v;
     }
 
-    public List<Fragment> getFragments() {
-        List<Fragment> fragments = new ArrayList<>();
-        synchronized (ManagerBase.class) {
-            for (FragmentState state : activeStates) {
-                fragments.add(state.getFragment());
+    private void addActiveState(FragmentState state) {
+        synchronized (stateLock) {
+            FragmentState[] states = activeStates;
+            FragmentState[] newStates = new FragmentState[states.length + 1];
+            System.arraycopy(states, 0, newStates, 0, states.length);
+            newStates[states.length] = state;
+            activeStateIndex.add(state);
+            activeStates = newStates;
+        }
+        countChild(state.getFragment(), 1);
+        invalidateState();
+    }
+
+    private void removeActiveState(FragmentState state) {
+        synchronized (stateLock) {
+            FragmentState[] states = activeStates;
+            int index = -1;
+            for (int i = 0; i < states.length; i++) {
+                if (states[i] == state) {
+                    index = i;
+                    break;
+                }
             }
+            if (index == -1)
+                return;
+            FragmentState[] newStates = states.length == 1 ? NO_STATES : new FragmentState[states.length - 1];
+            System.arraycopy(states, 0, newStates, 0, index);
+            System.arraycopy(states, index + 1, newStates, index, states.length - index - 1);
+            activeStateIndex.remove(state);
+            activeStates = newStates;
+        }
+        countChild(state.getFragment(), -1);
+        invalidateState();
+    }
+
+    private boolean isActive(FragmentState state) {
+        for (FragmentState activeState : activeStates) {
+            if (activeState == state)
+                return true;
         }
+        return false;
+    }
+
+    public List<Fragment> getFragments() {
+        FragmentState[] states = activeStates;
+        List<Fragment> fragments = new ArrayList<>(states.length);
+        for (FragmentState state : states)
+            fragments.add(state.getFragment());
         return fragments;
     }
 
     public Fragment getFragment(int id) {
-        synchronized (ManagerBase.class) {
-            for (FragmentState state : activeStates) {
-                if (state.getFragment().getId() == id)
-                    return state.getFragment();
-            }
+        synchronized (stateLock) {
+            FragmentState state = activeStateIndex.getById(id);
+            return state != null ? state.getFragment() : null;
         }
-        return null;
     }
 
     public Fragment getFragment(String tag) {
         if (tag == null)
             return null;
-        synchronized (ManagerBase.class) {
-            for (FragmentState state : activeStates) {
-                if (tag.equals(state.getFragment().getTag()))
-                    return state.getFragment();
-            }
+        synchronized (stateLock) {
+            FragmentState state = activeStateIndex.getByTag(tag);
+            return state != null ? state.getFragment() : null;
+        }
+    }
+
+    /**
+     * Finds an active state for a fragment or for a container. The fragment has the priority.
+     */
+    FragmentState findActiveState(Fragment fragment, int layoutId, String tag) {
+        synchronized (stateLock) {
+            FragmentState state = fragment != null ? activeStateIndex.getByFragment(fragment) : null;
+            return state != null ? state : activeStateIndex.getByContainer(layoutId, tag);
+        }
+    }
+
+    void onFragmentTagChanged(Fragment fragment, String oldTag, String newTag) {
+        synchronized (stateLock) {
+            FragmentState state = activeStateIndex.getByFragment(fragment);
+            if (state != null)
+                activeStateIndex.updateTag(state, oldTag, newTag);
         }
-        return null;
     }
 
     public boolean navigate(FragmentRoute route) {
@@ -432,12 +963,9 @@ public abstract class ManagerBase {
     public boolean dispatchKeyEvent(KeyEvent event) {
         if (onKeyEvent(event))
             return true;
-        synchronized (ManagerBase.class) {
-            List<FragmentState> copy = new ArrayList<>(activeStates);
-            for (FragmentState state : copy)
-                if (state.getFragment().dispatchKeyEvent(event))
-                    return true;
-        }
+        for (FragmentState state : activeStates)
+            if (state.getFragment().dispatchKeyEvent(event))
+                return true;
         return false;
     }
 
@@ -481,31 +1009,22 @@ public abstract class ManagerBase {
     public void start() {
         desiredState = STATE_STARTED;
         stateMachine.update();
-        synchronized (ManagerBase.class) {
-            List<FragmentState> copy = new ArrayList<>(activeStates);
-            for (FragmentState state : copy)
-                state.getFragment().start();
-        }
+        for (FragmentState state : activeStates)
+            state.getFragment().start();
     }
 
     public void resume() {
         desiredState = STATE_RESUMED;
         stateMachine.update();
-        synchronized (ManagerBase.class) {
-            List<FragmentState> copy = new ArrayList<>(activeStates);
-            for (FragmentState state : copy)
-                state.getFragment().resume();
-        }
+        for (FragmentState state : activeStates)
+            state.getFragment().resume();
     }
 
     public void pause() {
         if (!isResumed())
             return;
-        synchronized (ManagerBase.class) {
-            List<FragmentState> copy = new ArrayList<>(activeStates);
-            for (FragmentState state : copy)
-                state.getFragment().pause();
-        }
+        for (FragmentState state : activeStates)
+            state.getFragment().pause();
         desiredState = STATE_STARTED;
         stateMachine.update();
     }
@@ -513,11 +1032,8 @@ public abstract class ManagerBase {
     public void stop() {
         if (!isStarted())
             return;
-        synchronized (ManagerBase.class) {
-            List<FragmentState> copy = new ArrayList<>(activeStates);
-            for (FragmentState state : copy)
-                state.getFragment().stop();
-        }
+        for (FragmentState state : activeStates)
+            state.getFragment().stop();
         desiredState = STATE_ATTACHED;
         stateMachine.update();
     }
@@ -525,41 +1041,32 @@ public abstract class ManagerBase {
     public void detach() {
         if (!isAttached())
             return;
-        synchronized (ManagerBase.class) {
-            List<FragmentState> copy = new ArrayList<>(activeStates);
-            for (FragmentState state : copy)
-                state.getFragment().detach();
-        }
+        for (FragmentState state : activeStates)
+            state.getFragment().detach();
         ((ViewGroup) getRootView().getParent()).removeView(getRootView());
     }
 
     public void dispatchNewIntent(Intent intent) {
+        invalidateState();
         onNewIntent(intent);
-        synchronized (ManagerBase.class) {
-            List<FragmentState> copy = new ArrayList<>(activeStates);
-            for (FragmentState state : copy)
-                state.getFragment().dispatchNewIntent(intent);
-        }
+        for (FragmentState state : activeStates)
+            state.getFragment().dispatchNewIntent(intent);
     }
 
     public void dispatchActivityResult(int requestCode, int resultCode, Intent data) {
+        invalidateState();
         if (onActivityResult(requestCode, resultCode, data))
             return;
-        synchronized (ManagerBase.class) {
-            List<FragmentState> copy = new ArrayList<>(activeStates);
-            for (FragmentState state : copy)
-                state.getFragment().dispatchActivityResult(requestCode, resultCode, data);
-        }
+        for (FragmentState state : activeStates)
+            state.getFragment().dispatchActivityResult(requestCode, resultCode, data);
     }
 
     public void dispatchRequestPermissionsResult(int requestCode, List<String> granted, List<String> rejected) {
+        invalidateState();
         if (onRequestPermissionsResult(requestCode, granted, rejected))
             return;
-        synchronized (ManagerBase.class) {
-            List<FragmentState> copy = new ArrayList<>(activeStates);
-            for (FragmentState state : copy)
-                state.getFragment().dispatchRequestPermissionsResult(requestCode, granted, rejected);
-        }
+        for (FragmentState state : activeStates)
+            state.getFragment().dispatchRequestPermissionsResult(requestCode, granted, rejected);
     }
 
 
@@ -567,17 +1074,30 @@ public abstract class ManagerBase {
         if (!isCreated())
             return;
 
+        handler.removeCallbacks(executePendingTransaction);
+        pendingTransaction = null;
+        for (FragmentTransaction transaction : inflatingTransactions)
+            transaction.cancelInflation();
+        inflatingTransactions.clear();
+        runningTransaction = null;
+
         desiredState = StateMachine.STATE_NEW;
         stateMachine.update();
 
-        synchronized (ManagerBase.class) {
-            List<FragmentState> copy = new ArrayList<>(activeStates);
-            for (FragmentState state : copy)
-                state.getFragment().destroy();
-        }
+        for (FragmentState state : activeStates)
+            state.getFragment().destroy();
         activity = null;
-        activeStates.clear();
+        synchronized (stateLock) {
+            activeStates = NO_STATES;
+            activeStateIndex.clear();
+        }
         backstack.clear();
+        onBackstackChanged();
+        containersById.clear();
+        containersByTag.clear();
+        // the parent already stopped counting this manager when it was removed
+        backTransactions = upTransactions = 0;
+        childrenWithBack = childrenWithUp = 0;
         stateMachine.reset();
     }
 
@@ -615,38 +1135,66 @@ public abstract class ManagerBase {
         return rootView;
     }
 
-    public void save(Bundle state) {
-        List<FragmentState> allStates = new ArrayList<>();
+    /**
+     * Marks the backstack as changed, so its bundles are rebuilt by the next save
+     */
+    void onBackstackChanged() {
+        backstackDirty = true;
+        invalidateState();
+    }
 
-        ArrayList<Bundle> transactionBundles = new ArrayList<>();
-        for (FragmentTransaction transaction : backstack) {
-            Bundle transactionBundle = new Bundle();
-            transaction.save(transactionBundle, allStates);
-            transactionBundles.add(transactionBundle);
+    /**
+     * Marks the saved state as outdated. States of managers are always saved, so only fragments use it.
+     *
+     * @see Fragment#setIncrementalSave(boolean)
+     */
+    public void invalidateState() {
+    }
+
+    public void save(Bundle state) {
+        flushTransactions();
+        if (backstackDirty) {
+            backstackSnapshot = new BackstackSnapshot(backstack);
+            backstackDirty = false;
         }
-        state.putParcelableArrayList(TRANSACTIONS, transactionBundles);
+        BackstackSnapshot snapshot = backstackSnapshot;
+        List<FragmentState> allStates = snapshot.states;
+        state.putIntArray(TRANSACTIONS, snapshot.transactions);
+        state.putParcelableArrayList(SHARED_ELEMENTS, snapshot.sharedElements);
 
         ArrayList<Bundle> stateBundles = new ArrayList<>();
         for (FragmentState fragmentState : allStates) {
             Bundle stateBundle = fragmentState.save();
             stateBundles.add(stateBundle);
         }
+        spillStates(allStates, stateBundles);
         state.putParcelableArrayList(STATES, stateBundles);
 
-        int[] activeStateIndices = new int[activeStates.size()];
+        FragmentState[] states = activeStates;
+        int[] activeStateIndices = new int[states.length];
         for (int i = 0; i < activeStateIndices.length; i++) {
-            activeStateIndices[i] = allStates.indexOf(activeStates.get(i));
+            activeStateIndices[i] = snapshot.indexOf(states[i]);
         }
         state.putIntArray(ACTIVE_STATES, activeStateIndices);
 
+        if (spillSession != null) {
+            state.putString(SPILL_SESSION, spillSession);
+            StateSpill.deleteRead(activity, spillSession);
+        }
+
         userState = onSaveState();
         state.putBundle(USER_STATE, userState != null ? userState : new Bundle());
     }
 
     public void restore(Bundle state) {
         List<FragmentState> allStates = new ArrayList<>();
+        spillSession = state.getString(SPILL_SESSION);
+        if (spillSession != null)
+            StateSpill.restoreSession(spillSession);
 
         ArrayList<Bundle> stateBundles = state.getParcelableArrayList(STATES);
+        if (stateBundles == null)
+            return;   // compacted state
         for (Bundle stateBundle : stateBundles) {
             FragmentState fragmentState = new FragmentState();
             fragmentState.restore(stateBundle);
@@ -661,12 +1209,7 @@ public abstract class ManagerBase {
             resumeState(fragmentState);
         }
 
-        ArrayList<Bundle> transactionBundles = state.getParcelableArrayList(TRANSACTIONS);
-        for (Bundle transactionBundle : transactionBundles) {
-            FragmentTransaction transaction = new FragmentTransaction(this);
-            transaction.restore(transactionBundle, allStates);
-            backstack.add(transaction);
-        }
+        BackstackSnapshot.decode(this, state.getIntArray(TRANSACTIONS), state.<Bundle>getParcelableArrayList(SHARED_ELEMENTS), allStates);
     }
 
     @NonNull
@@ -19,32 +19,38 @@ public class ModalFragmentAnimator implements FragmentAnimator {
 
     public Animator animateAdd(final Fragment fragment) {
         final View view = fragment.getView();
-        return new Animator(DEFAULT_DURATION, decelerateInterpolator, interpolation -> {
+        Animator animator = new Animator(DEFAULT_DURATION, decelerateInterpolator, interpolation -> {
             view.setAlpha(interpolation);
             float value = view.getHeight() * (1.0f - interpolation) / 2.0f;
             view.setTranslationY(value);
         });
+        animator.setAnimatedProperties(Animator.PROPERTY_ALPHA | Animator.PROPERTY_TRANSLATION);
+        return animator;
     }
 
     public Animator animateStop(Fragment fragment) {
         Animator animator = new Animator();
         animator.setDuration(DEFAULT_DURATION);
+        animator.setAnimatedProperties(Animator.PROPERTY_NONE);
         return animator;
     }
 
     public Animator animateRemove(final Fragment fragment) {
         final View view = fragment.getView();
-        return new Animator(DEFAULT_DURATION, accelerateInterpolator, interpolation -> {
+        Animator animator = new Animator(DEFAULT_DURATION, accelerateInterpolator, interpolation -> {
             view.setAlpha(1 - interpolation);
             float value = view.getHeight() * interpolation / 2.0f;
             view.setTranslationY(value);
         });
+        animator.setAnimatedProperties(Animator.PROPERTY_ALPHA | Animator.PROPERTY_TRANSLATION);
+        return animator;
     }
 
     public Animator animateStart(Fragment fragment) {
         final View view = fragment.getView();
         Animator animator = new Animator();
         animator.setDuration(DEFAULT_DURATION);
+        animator.setAnimatedProperties(Animator.PROPERTY_NONE);
         animator.addListener(new AnimatorListenerAdapter() {
             @Override
             public void onStart() {
@@ -0,0 +1,148 @@
+package pl.zielony.fragmentmanager;
+
+import android.app.Activity;
+import android.os.Looper;
+import android.os.MessageQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tracks fragments being built ahead of navigation by {@link FragmentPool#prewarm(Class, int, Activity)}.
+ * Fragments are constructed one per main looper idle pass, their views are inflated on a background thread
+ * (or on the main thread if the layout cannot be inflated in background) and then put into the pool.
+ * Only fragments kept by the pool are counted as ready - if the pool drops some of them, the handle doesn't
+ * become ready. Fragments which are ready can still be evicted later by other pooled fragments.
+ */
+public class PrewarmHandle implements MessageQueue.IdleHandler {
+    public interface OnReadyListener {
+        void onReady(PrewarmHandle handle);
+    }
+
+    private final Class<? extends Fragment> fragmentClass;
+    private final Activity activity;
+    private int count;
+    private int requested = 0;
+    private int finished = 0;
+    private int ready = 0;
+    private boolean scheduled = false;
+    private boolean cancelled = false;
+    private List<OnReadyListener> listeners = new ArrayList<>();
+
+    PrewarmHandle(Class<? extends Fragment> fragmentClass, int count, Activity activity) {
+        this.fragmentClass = fragmentClass;
+        this.count = count;
+        this.activity = activity;
+    }
+
+    void start() {
+        if (scheduled || requested == count)
+            return;
+        scheduled = true;
+        ManagerBase.getHandler().post(() -> Looper.myQueue().addIdleHandler(this));
+    }
+
+    /**
+     * Builds more fragments with this handle. Used by overlapping prewarms of the same class.
+     */
+    void extend(int count) {
+        if (count == 0)
+            return;
+        this.count += count;
+        start();
+    }
+
+    /**
+     * @return number of fragments requested but not finished yet
+     */
+    int getPendingCount() {
+        return count - finished;
+    }
+
+    @Override
+    public boolean queueIdle() {
+        if (cancelled || requested == count) {
+            scheduled = false;
+            return false;
+        }
+        requested++;
+        final Fragment fragment = FragmentClassRegistry.newInstance(fragmentClass);
+        InflationExecutor.execute(() -> {
+            boolean inflated;
+            try {
+                fragment.createView(activity);
+                inflated = true;
+            } catch (RuntimeException e) {
+                inflated = false;
+            }
+            final boolean inflatedInBackground = inflated;
+            ManagerBase.getHandler().post(() -> onInflated(fragment, inflatedInBackground));
+        });
+        scheduled = requested < count;
+        return scheduled;
+    }
+
+    private void onInflated(Fragment fragment, boolean inflatedInBackground) {
+        if (cancelled)
+            return;
+        if (!inflatedInBackground)
+            fragment.createView(activity);
+        finished++;
+        if (FragmentPool.add(fragment))
+            ready++;
+        if (finished < count)
+            return;
+        FragmentPool.onPrewarmFinished(this);
+        if (ready == count) {
+            for (OnReadyListener listener : listeners)
+                listener.onReady(this);
+        }
+        listeners.clear();
+    }
+
+    public Class<? extends Fragment> getFragmentClass() {
+        return fragmentClass;
+    }
+
+    /**
+     * @return number of fragments already put into the pool
+     */
+    public int getReadyCount() {
+        return ready;
+    }
+
+    public boolean isReady() {
+        return ready == count;
+    }
+
+    /**
+     * Adds a listener called on the main thread when all fragments are in the pool. If they already are,
+     * the listener is called immediately.
+     */
+    public void addOnReadyListener(OnReadyListener listener) {
+        if (isReady()) {
+            listener.onReady(this);
+        } else {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeOnReadyListener(OnReadyListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Stops building fragments. Fragments already in the pool stay there.
+     */
+    public void cancel() {
+        if (cancelled)
+            return;
+        cancelled = true;
+        listeners.clear();
+        FragmentPool.onPrewarmFinished(this);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
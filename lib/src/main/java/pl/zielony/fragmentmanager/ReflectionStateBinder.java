@@ -0,0 +1,78 @@
+package pl.zielony.fragmentmanager;
+
+import android.os.Bundle;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reflection-based binder used for fragment classes without a generated binder. Resolves fields and
+ * setters once per class.
+ */
+class ReflectionStateBinder implements StateBinder<Fragment> {
+    private final Field[] fields;
+    private final Method[] setters;
+
+    ReflectionStateBinder(Class<?> fragmentClass) {
+        List<Field> stateFields = new ArrayList<>();
+        for (Field f : fragmentClass.getDeclaredFields()) {
+            if (f.getAnnotation(State.class) != null) {
+                f.setAccessible(true);
+                stateFields.add(f);
+            }
+        }
+        fields = stateFields.toArray(new Field[stateFields.size()]);
+        setters = new Method[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            String name = fields[i].getName();
+            try {
+                setters[i] = fragmentClass.getMethod("set" + name.substring(0, 1).toUpperCase() + name.substring(1), fields[i].getType());
+                setters[i].setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                // no setter, the field will be set directly
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return fields.length == 0;
+    }
+
+    @Override
+    public void save(Fragment fragment, Bundle state) {
+        for (Field f : fields) {
+            try {
+                state.putSerializable(f.getName(), (Serializable) f.get(fragment));
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void restore(Fragment fragment, Bundle state) {
+        for (int i = 0; i < fields.length; i++) {
+            Field f = fields[i];
+            Serializable value = state.getSerializable(f.getName());
+            if (setters[i] != null) {
+                try {
+                    setters[i].invoke(fragment, value);
+                    continue;
+                } catch (InvocationTargetException e) {
+                    e.printStackTrace();
+                } catch (IllegalAccessException e) {
+                    e.printStackTrace();
+                }
+            }
+            try {
+                f.set(fragment, value);
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
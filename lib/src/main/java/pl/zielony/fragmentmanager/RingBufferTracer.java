@@ -0,0 +1,139 @@
+package pl.zielony.fragmentmanager;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the most recent records in a fixed-size buffer. Writers don't lock - each one claims a slot with
+ * an atomic counter and the oldest records are overwritten. Records keep the owner's class and identity
+ * hash, not the owner itself, so the buffer doesn't leak fragments.
+ */
+public class RingBufferTracer implements FragmentTracer {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    public enum Type {
+        BEGIN, END, EVENT
+    }
+
+    public static class Record {
+        private final long sequence;
+        private final long time;
+        private final long threadId;
+        private final Type type;
+        private final String name;
+        private final Class<?> ownerClass;
+        private final int ownerId;
+
+        Record(long sequence, Type type, String name, Object owner) {
+            this.sequence = sequence;
+            this.time = System.nanoTime();
+            this.threadId = Thread.currentThread().getId();
+            this.type = type;
+            this.name = name;
+            this.ownerClass = owner.getClass();
+            this.ownerId = System.identityHashCode(owner);
+        }
+
+        /**
+         * @return System.nanoTime() of the record
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public long getThreadId() {
+            return threadId;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Class<?> getOwnerClass() {
+            return ownerClass;
+        }
+
+        public int getOwnerId() {
+            return ownerId;
+        }
+
+        @Override
+        public String toString() {
+            return time + " [" + threadId + "] " + type + " " + name + " " + ownerClass.getSimpleName() + "@" + Integer.toHexString(ownerId);
+        }
+    }
+
+    private final AtomicReferenceArray<Record> records;
+    private final int mask;
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    public RingBufferTracer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of kept records, rounded up to a power of two
+     */
+    public RingBufferTracer(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity has to be positive");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        records = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    @Override
+    public void beginSection(String name, Object owner) {
+        record(Type.BEGIN, name, owner);
+    }
+
+    @Override
+    public void endSection(String name, Object owner) {
+        record(Type.END, name, owner);
+    }
+
+    @Override
+    public void event(String name, Object owner) {
+        record(Type.EVENT, name, owner);
+    }
+
+    private void record(Type type, String name, Object owner) {
+        long sequence = nextSequence.getAndIncrement();
+        records.set((int) (sequence & mask), new Record(sequence, type, name, owner));
+    }
+
+    public int getCapacity() {
+        return records.length();
+    }
+
+    /**
+     * Returns kept records, oldest first. Can be called from any thread while tracing. Records which are
+     * being written or overwritten during the call are skipped.
+     */
+    public List<Record> dump() {
+        long end = nextSequence.get();
+        long start = Math.max(0, end - records.length());
+        List<Record> result = new ArrayList<>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            Record record = records.get((int) (sequence & mask));
+            if (record != null && record.sequence == sequence)
+                result.add(record);
+        }
+        return result;
+    }
+
+    public void dump(PrintWriter writer) {
+        for (Record record : dump())
+            writer.println(record);
+        writer.flush();
+    }
+}
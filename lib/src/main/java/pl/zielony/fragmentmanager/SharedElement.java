@@ -1,6 +1,8 @@
 package pl.zielony.fragmentmanager;
 
+import android.graphics.Canvas;
 import android.graphics.Rect;
+import android.os.Build;
 import android.os.Bundle;
 import android.view.View;
 import android.view.animation.DecelerateInterpolator;
@@ -14,6 +16,11 @@ import pl.zielony.animator.UpdateListener;
 
 /**
  * Created by Marcin on 2016-06-26.
+ * <p>
+ * Moves the target view from the source view's rect to its own. Both rects are captured once, when the
+ * transition starts. The view keeps its layout and is animated with translation and scale on a hardware
+ * layer (if it fits in {@link LayerPolicy}'s budget), so a running transition doesn't measure or lay
+ * anything out.
  */
 public abstract class SharedElement<FrameType extends KeyFrame, ViewType extends View> implements UpdateListener {
     private static final String FROM = "from";
@@ -31,15 +38,95 @@ public abstract class SharedElement<FrameType extends KeyFrame, ViewType extends
     protected FrameType frameFrom;
     protected FrameType frameTo;
 
+    protected float fraction;
+    final Rect bounds = new Rect();
+    private final Rect dirty = new Rect();
+
+    private boolean clipToBounds = false;
+    private final Rect clipBounds = new Rect();
+    private ViewTransform viewTransform;
+    private long layerBytes;
+
+    /**
+     * Transformation of the view from before the transition
+     */
+    private static class ViewTransform {
+        final float translationX, translationY, scaleX, scaleY, pivotX, pivotY;
+        final int layerType;
+        final Rect clipBounds;
+
+        ViewTransform(View view) {
+            translationX = view.getTranslationX();
+            translationY = view.getTranslationY();
+            scaleX = view.getScaleX();
+            scaleY = view.getScaleY();
+            pivotX = view.getPivotX();
+            pivotY = view.getPivotY();
+            layerType = view.getLayerType();
+            clipBounds = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2 ? view.getClipBounds() : null;
+        }
+
+        void restore(View view) {
+            view.setTranslationX(translationX);
+            view.setTranslationY(translationY);
+            view.setScaleX(scaleX);
+            view.setScaleY(scaleY);
+            view.setPivotX(pivotX);
+            view.setPivotY(pivotY);
+            view.setLayerType(layerType, null);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+                view.setClipBounds(clipBounds);
+        }
+    }
+
+    /**
+     * The view is drawn by the container, but keeps its layout from its own parent, so the interpolated
+     * rect is reached by translating and scaling the view from its top left corner
+     */
     @Override
     public void onUpdate(float interpolation) {
+        fraction = interpolation;
+        Rect rectFrom = frameFrom.rect;
+        Rect rectTo = frameTo.rect;
+        float width = interpolate(rectFrom.width(), rectTo.width(), interpolation);
+        float height = interpolate(rectFrom.height(), rectTo.height(), interpolation);
+        float scaleX = view.getWidth() > 0 ? width / view.getWidth() : 1;
+        float scaleY = view.getHeight() > 0 ? height / view.getHeight() : 1;
+        if (clipToBounds && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            scaleX = scaleY = Math.max(scaleX, scaleY);
+            if (scaleX > 0) {
+                clipBounds.set(0, 0, Math.round(width / scaleX), Math.round(height / scaleY));
+                view.setClipBounds(clipBounds);
+            }
+        }
+        view.setScaleX(scaleX);
+        view.setScaleY(scaleY);
+        view.setTranslationX(interpolate(rectFrom.left, rectTo.left, interpolation) - view.getLeft());
+        view.setTranslationY(interpolate(rectFrom.top, rectTo.top, interpolation) - view.getTop());
+        invalidate();
+    }
+
+    /**
+     * Invalidates the union of the previous and the current bounds of the element
+     */
+    protected void invalidate() {
+        dirty.set(bounds);
+        getBounds(bounds);
+        dirty.union(bounds);
+        if (!dirty.isEmpty())
+            container.invalidate(dirty);
+    }
+
+    /**
+     * Computes the area covered by the element at the current fraction, in the container's coordinates
+     */
+    protected void getBounds(Rect bounds) {
         Rect rectFrom = frameFrom.rect;
         Rect rectTo = frameTo.rect;
-        view.layout(lerp(rectFrom.left, rectTo.left, interpolation),
-                lerp(rectFrom.top, rectTo.top, interpolation),
-                lerp(rectFrom.right, rectTo.right, interpolation),
-                lerp(rectFrom.bottom, rectTo.bottom, interpolation));
-        container.invalidate();
+        bounds.set(lerp(rectFrom.left, rectTo.left, fraction),
+                lerp(rectFrom.top, rectTo.top, fraction),
+                lerp(rectFrom.right, rectTo.right, fraction) + 1,
+                lerp(rectFrom.bottom, rectTo.bottom, fraction) + 1);
     }
 
     public SharedElement() {
@@ -79,27 +166,24 @@ public abstract class SharedElement<FrameType extends KeyFrame, ViewType extends
 
         final ViewType viewTo = (ViewType) rootTo.findViewById(viewId);
         frameTo = setupFrame(viewTo, containerLocation);
+        fraction = 0;
+        bounds.setEmpty();
 
         Animator animator = start(viewTo);
         animator.addListener(new AnimatorListenerAdapter() {
             @Override
             public void onStart() {
-                rootFrom.setPreventLayout(true);
-                rootTo.setPreventLayout(true);
                 viewFrom.setVisibility(View.INVISIBLE);
                 viewTo.setVisibility(View.INVISIBLE);
-                container.addSharedView(viewTo);
+                container.addSharedElement(SharedElement.this);
             }
 
             @Override
             public void onEnd() {
-                rootFrom.setPreventLayout(false);
-                rootTo.setPreventLayout(false);
+                restoreView(viewTo);
                 viewFrom.setVisibility(View.VISIBLE);
                 viewTo.setVisibility(View.VISIBLE);
-                container.removeSharedView(viewTo);
-                rootFrom.requestLayout();
-                rootTo.requestLayout();
+                container.removeSharedElement(SharedElement.this);
             }
         });
 
@@ -110,6 +194,7 @@ public abstract class SharedElement<FrameType extends KeyFrame, ViewType extends
 
     private Animator start(final ViewType viewTo) {
         this.view = viewTo;
+        prepareView(viewTo);
         Animator animator = new Animator();
         animator.setDuration(duration);
         if (interpolator == null)
@@ -119,10 +204,57 @@ public abstract class SharedElement<FrameType extends KeyFrame, ViewType extends
         return animator;
     }
 
+    /**
+     * Prepares the target view for drawing with a transformation. Called once, before the transition starts.
+     */
+    protected void prepareView(ViewType view) {
+        viewTransform = new ViewTransform(view);
+        view.setPivotX(0);
+        view.setPivotY(0);
+        layerBytes = LayerPolicy.acquire(view, Animator.PROPERTY_TRANSLATION | Animator.PROPERTY_SCALE);
+        if (layerBytes > 0)
+            view.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+    }
+
+    /**
+     * Restores the target view after the transition
+     */
+    protected void restoreView(ViewType view) {
+        if (viewTransform == null)
+            return;
+        viewTransform.restore(view);
+        viewTransform = null;
+        LayerPolicy.release(layerBytes);
+        layerBytes = 0;
+    }
+
+    /**
+     * Draws the element on the container's canvas. Called on each container draw while the transition runs.
+     */
+    protected void draw(Canvas canvas) {
+        container.drawSharedView(canvas, view);
+    }
+
     protected static int lerp(float a, float b, float t) {
         return (int) (b * t + a * (1 - t));
     }
 
+    private static float interpolate(float a, float b, float t) {
+        return b * t + a * (1 - t);
+    }
+
+    /**
+     * Keeps the view's aspect ratio while scaling and clips it to the interpolated rect instead of stretching
+     * it. Requires API 18, older devices stretch the view.
+     */
+    public void setClipToBounds(boolean clipToBounds) {
+        this.clipToBounds = clipToBounds;
+    }
+
+    public boolean isClipToBounds() {
+        return clipToBounds;
+    }
+
     public void setDuration(long duration) {
         this.duration = duration;
     }
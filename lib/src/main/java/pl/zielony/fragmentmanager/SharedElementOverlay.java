@@ -0,0 +1,74 @@
+package pl.zielony.fragmentmanager;
+
+import android.graphics.Canvas;
+import android.view.View;
+
+import java.util.ArrayList;
+
+/**
+ * Shared views and shared elements drawn over the children of a FragmentRootView. Shared elements report
+ * their own dirty regions, so the overlay invalidates the container only when items are removed.
+ */
+class SharedElementOverlay {
+    private final FragmentRootView container;
+    private final ArrayList<SharedView> views = new ArrayList<>();
+    private final ArrayList<SharedElement> elements = new ArrayList<>();
+
+    /**
+     * A view with its layout from before it was added to the overlay
+     */
+    private static class SharedView {
+        final View view;
+        final int left, top, right, bottom;
+
+        SharedView(View view) {
+            this.view = view;
+            left = view.getLeft();
+            top = view.getTop();
+            right = view.getRight();
+            bottom = view.getBottom();
+        }
+
+        void restore() {
+            view.layout(left, top, right, bottom);
+        }
+    }
+
+    SharedElementOverlay(FragmentRootView container) {
+        this.container = container;
+    }
+
+    void addView(View view) {
+        views.add(new SharedView(view));
+    }
+
+    void removeView(View view) {
+        for (int i = 0; i < views.size(); i++) {
+            if (views.get(i).view == view) {
+                views.remove(i).restore();
+                container.invalidate();
+                return;
+            }
+        }
+    }
+
+    void add(SharedElement element) {
+        elements.add(element);
+    }
+
+    void remove(SharedElement element) {
+        if (elements.remove(element) && !element.bounds.isEmpty())
+            container.invalidate(element.bounds);
+    }
+
+    boolean isEmpty() {
+        return views.isEmpty() && elements.isEmpty();
+    }
+
+    void draw(Canvas canvas) {
+        for (int i = 0; i < views.size(); i++)
+            container.drawSharedView(canvas, views.get(i).view);
+        for (int i = 0; i < elements.size(); i++)
+            elements.get(i).draw(canvas);
+    }
+}
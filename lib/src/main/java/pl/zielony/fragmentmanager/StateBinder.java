@@ -0,0 +1,16 @@
+package pl.zielony.fragmentmanager;
+
+import android.os.Bundle;
+
+/**
+ * Saves and restores {@link State} fields declared in one fragment class. Implementations are generated
+ * by the fragment manager's annotation processor and named after the fragment class with a "_StateBinder"
+ * suffix. Fragments without a generated binder fall back to reflection.
+ */
+public interface StateBinder<T extends Fragment> {
+    String SUFFIX = "_StateBinder";
+
+    void save(T fragment, Bundle state);
+
+    void restore(T fragment, Bundle state);
+}
@@ -0,0 +1,55 @@
+package pl.zielony.fragmentmanager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves and caches state binders for each class of a fragment's hierarchy. Generated binders are
+ * preferred, reflection is used only for classes the annotation processor didn't handle.
+ */
+final class StateBinders {
+    private static final Map<Class<?>, StateBinder[]> binders = new HashMap<>();
+
+    private StateBinders() {
+    }
+
+    static synchronized StateBinder[] get(Class<? extends Fragment> fragmentClass) {
+        StateBinder[] result = binders.get(fragmentClass);
+        if (result == null) {
+            result = resolve(fragmentClass);
+            binders.put(fragmentClass, result);
+        }
+        return result;
+    }
+
+    private static StateBinder[] resolve(Class<?> fragmentClass) {
+        List<StateBinder> result = new ArrayList<>();
+        Class<?> thisClass = fragmentClass;
+        while (thisClass != Fragment.class) {
+            StateBinder binder = findGenerated(thisClass);
+            if (binder != null) {
+                result.add(binder);
+            } else {
+                ReflectionStateBinder reflectionBinder = new ReflectionStateBinder(thisClass);
+                if (!reflectionBinder.isEmpty())
+                    result.add(reflectionBinder);
+            }
+            thisClass = thisClass.getSuperclass();
+        }
+        return result.toArray(new StateBinder[result.size()]);
+    }
+
+    private static StateBinder findGenerated(Class<?> fragmentClass) {
+        try {
+            ClassLoader classLoader = fragmentClass.getClassLoader();
+            Class<?> binderClass = Class.forName(fragmentClass.getName() + StateBinder.SUFFIX, true, classLoader);
+            return (StateBinder) binderClass.getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (Exception e) {
+            throw new RuntimeException("Unable to create state binder for " + fragmentClass.getName(), e);
+        }
+    }
+}
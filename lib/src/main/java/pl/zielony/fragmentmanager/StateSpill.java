@@ -0,0 +1,226 @@
+package pl.zielony.fragmentmanager;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Process;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps saved fragment states in the cache directory, so large backstacks don't have to fit in the
+ * Activity's saved state. States of one activity are kept in a session directory. Files are written
+ * synchronously, so the saved state never points to a file which isn't written yet. A file which was read is
+ * deleted when the session is saved again, because until then the old saved state can be delivered again.
+ * Sessions are deleted when their activity finishes or, if the process was killed in the meantime, when a new
+ * task starts. Deleting runs on a background thread. All methods have to be called on the main thread.
+ */
+final class StateSpill {
+    private static final String DIRECTORY = "fragmentmanager";
+
+    private static final Set<String> liveSessions = new HashSet<>();
+    private static final List<String> readKeys = new ArrayList<>();
+    private static final ThreadPoolExecutor executor;
+
+    static {
+        executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "FragmentStateSpill");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    private StateSpill() {
+    }
+
+    static String newSession() {
+        String session = UUID.randomUUID().toString();
+        liveSessions.add(session);
+        return session;
+    }
+
+    /**
+     * Marks a restored session as used by this process, so it's not deleted by {@link #deleteOrphanedSessions(Context)}
+     */
+    static void restoreSession(String session) {
+        liveSessions.add(session);
+    }
+
+    /**
+     * @return key of the written state or null if the state can't be written and has to stay in the saved state
+     */
+    static String write(Context context, String session, Bundle state) {
+        byte[] data;
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(state);
+            data = parcel.marshall();
+        } catch (RuntimeException e) {
+            // states holding binders or file descriptors can't be marshalled
+            return null;
+        } finally {
+            parcel.recycle();
+        }
+
+        String key = session + File.separator + UUID.randomUUID().toString();
+        if (!writeFile(new File(getDirectory(context), key), data))
+            return null;
+        return key;
+    }
+
+    /**
+     * @return the state written with the key or null if the state couldn't be read
+     */
+    static Bundle read(Context context, String key) {
+        byte[] data = readFile(new File(getDirectory(context), key));
+        if (data == null)
+            return null;
+        readKeys.add(key);
+
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(data, 0, data.length);
+            parcel.setDataPosition(0);
+            return parcel.readBundle(context.getClassLoader());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Deletes files of the session which were read back. Has to be called after the session is saved, so
+     * older saved states pointing to these files won't be restored anymore.
+     */
+    static void deleteRead(Context context, String session) {
+        String prefix = session + File.separator;
+        final List<File> files = new ArrayList<>();
+        Iterator<String> iterator = readKeys.iterator();
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            if (key.startsWith(prefix)) {
+                files.add(new File(getDirectory(context), key));
+                iterator.remove();
+            }
+        }
+        if (files.isEmpty())
+            return;
+        executor.execute(() -> {
+            for (File file : files)
+                file.delete();
+        });
+    }
+
+    /**
+     * Deletes all states of the session
+     */
+    static void deleteSession(Context context, String session) {
+        String prefix = session + File.separator;
+        liveSessions.remove(session);
+        Iterator<String> iterator = readKeys.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().startsWith(prefix))
+                iterator.remove();
+        }
+        final File directory = new File(getDirectory(context), session);
+        executor.execute(() -> deleteDirectory(directory));
+    }
+
+    /**
+     * Deletes sessions not used by this process. Their activities were killed with the process and if they
+     * weren't restored before a new task started, they won't be restored anymore.
+     */
+    static void deleteOrphanedSessions(Context context) {
+        final File root = getDirectory(context);
+        final Set<String> keep = new HashSet<>(liveSessions);
+        executor.execute(() -> {
+            File[] sessions = root.listFiles();
+            if (sessions == null)
+                return;
+            for (File session : sessions) {
+                if (!keep.contains(session.getName()))
+                    deleteDirectory(session);
+            }
+        });
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        directory.delete();
+    }
+
+    private static boolean writeFile(File file, byte[] data) {
+        File directory = file.getParentFile();
+        if (!directory.exists() && !directory.mkdirs())
+            return false;
+        FileOutputStream stream = null;
+        try {
+            stream = new FileOutputStream(file);
+            FileChannel channel = stream.getChannel();
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            file.delete();
+            return false;
+        } finally {
+            close(stream);
+        }
+    }
+
+    private static byte[] readFile(File file) {
+        FileInputStream stream = null;
+        try {
+            stream = new FileInputStream(file);
+            FileChannel channel = stream.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            return data;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            close(stream);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static File getDirectory(Context context) {
+        return new File(context.getCacheDir(), DIRECTORY);
+    }
+}
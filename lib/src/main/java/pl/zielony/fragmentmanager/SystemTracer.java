@@ -0,0 +1,37 @@
+package pl.zielony.fragmentmanager;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Emits sections to android.os.Trace, so they show up in systrace and Android Studio's profiler. Section
+ * names include the owner's class. Events are emitted as empty sections. Does nothing below API 18.
+ */
+public class SystemTracer implements FragmentTracer {
+    private static final int MAX_SECTION_NAME_LENGTH = 127;
+
+    @Override
+    public void beginSection(String name, Object owner) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+            Trace.beginSection(sectionName(name, owner));
+    }
+
+    @Override
+    public void endSection(String name, Object owner) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2)
+            Trace.endSection();
+    }
+
+    @Override
+    public void event(String name, Object owner) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2)
+            return;
+        Trace.beginSection(sectionName(name, owner));
+        Trace.endSection();
+    }
+
+    private static String sectionName(String name, Object owner) {
+        String sectionName = name + " " + owner.getClass().getSimpleName();
+        return sectionName.length() > MAX_SECTION_NAME_LENGTH ? sectionName.substring(0, MAX_SECTION_NAME_LENGTH) : sectionName;
+    }
+}
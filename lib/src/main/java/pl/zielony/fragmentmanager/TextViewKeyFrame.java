@@ -1,6 +1,10 @@
 package pl.zielony.fragmentmanager;
 
+import android.text.Layout;
+
 public class TextViewKeyFrame extends KeyFrame {
     float textSize = 0;
     int textColor = 0;
-}
\ No newline at end of file
+    Layout layout;
+    int textLeft, textTop;
+}
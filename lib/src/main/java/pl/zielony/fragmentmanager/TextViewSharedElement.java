@@ -1,16 +1,25 @@
 package pl.zielony.fragmentmanager;
 
-import android.animation.ArgbEvaluator;
-import android.util.TypedValue;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.text.Layout;
+import android.text.TextPaint;
 import android.view.View;
 import android.widget.TextView;
 
 /**
  * Created by Marcin on 2016-08-08.
+ * <p>
+ * Morphs the text of the source view into the text of the target view. Text layouts of both views are
+ * captured when the transition starts and are drawn scaled and recoloured on the container's canvas, so the
+ * text isn't measured again while the transition runs. Views without a text layout are animated with a
+ * transformation like other shared elements.
  */
-
 public class TextViewSharedElement extends SharedElement<TextViewKeyFrame, TextView> {
-    private ArgbEvaluator evaluator = new ArgbEvaluator();
+
+    TextViewSharedElement() {
+        // used when restoring a transaction
+    }
 
     public TextViewSharedElement(View view, Fragment from, Fragment to) {
         this.idFrom = from.getId();
@@ -24,21 +33,105 @@ public class TextViewSharedElement extends SharedElement<TextViewKeyFrame, TextV
         this.viewId = id;
     }
 
+    private boolean hasTextLayouts() {
+        return frameFrom.layout != null && frameTo.layout != null && frameFrom.textSize > 0 && frameTo.textSize > 0;
+    }
+
     @Override
     public void onUpdate(float interpolation) {
-        view.setTextColor((Integer) evaluator.evaluate(interpolation, frameFrom.textColor, frameTo.textColor));
-        view.setTextSize(TypedValue.COMPLEX_UNIT_PX, lerp(frameFrom.textSize, frameTo.textSize, interpolation));
-        super.onUpdate(interpolation);
+        fraction = interpolation;
+        if (hasTextLayouts()) {
+            invalidate();
+        } else {
+            super.onUpdate(interpolation);
+        }
+    }
+
+    @Override
+    protected void prepareView(TextView view) {
+        if (!hasTextLayouts())
+            super.prepareView(view);
+    }
+
+    @Override
+    protected void getBounds(Rect bounds) {
+        super.getBounds(bounds);
+        if (!hasTextLayouts())
+            return;
+        float textSize = frameFrom.textSize + (frameTo.textSize - frameFrom.textSize) * fraction;
+        float left = frameFrom.rect.left + (frameTo.rect.left - frameFrom.rect.left) * fraction;
+        float top = frameFrom.rect.top + (frameTo.rect.top - frameFrom.rect.top) * fraction;
+        unionText(bounds, frameFrom, left, top, textSize);
+        unionText(bounds, frameTo, left, top, textSize);
+    }
+
+    private static void unionText(Rect bounds, TextViewKeyFrame frame, float left, float top, float textSize) {
+        float scale = textSize / frame.textSize;
+        int textLeft = (int) Math.floor(left + frame.textLeft * scale);
+        int textTop = (int) Math.floor(top + frame.textTop * scale);
+        bounds.union(textLeft, textTop,
+                textLeft + (int) Math.ceil(frame.layout.getWidth() * scale) + 1,
+                textTop + (int) Math.ceil(frame.layout.getHeight() * scale) + 1);
+    }
+
+    @Override
+    protected void restoreView(TextView view) {
+        super.restoreView(view);
+        frameFrom.layout = null;
+        frameTo.layout = null;
+    }
+
+    @Override
+    protected void draw(Canvas canvas) {
+        if (!hasTextLayouts()) {
+            super.draw(canvas);
+            return;
+        }
+        int color = lerpColor(frameFrom.textColor, frameTo.textColor, fraction);
+        float textSize = frameFrom.textSize + (frameTo.textSize - frameFrom.textSize) * fraction;
+        float left = frameFrom.rect.left + (frameTo.rect.left - frameFrom.rect.left) * fraction;
+        float top = frameFrom.rect.top + (frameTo.rect.top - frameFrom.rect.top) * fraction;
+        drawText(canvas, frameFrom, left, top, textSize, color, 1 - fraction);
+        drawText(canvas, frameTo, left, top, textSize, color, fraction);
+    }
+
+    private void drawText(Canvas canvas, TextViewKeyFrame frame, float left, float top, float textSize, int color, float alpha) {
+        if (alpha <= 0)
+            return;
+        float scale = textSize / frame.textSize;
+        Layout layout = frame.layout;
+        TextPaint paint = layout.getPaint();
+        int paintColor = paint.getColor();
+        paint.setColor(color);
+        paint.setAlpha((int) ((color >>> 24) * alpha));
+        int saveCount = canvas.save();
+        canvas.translate(left + frame.textLeft * scale, top + frame.textTop * scale);
+        canvas.scale(scale, scale);
+        layout.draw(canvas);
+        canvas.restoreToCount(saveCount);
+        paint.setColor(paintColor);
+    }
+
+    static int lerpColor(int from, int to, float t) {
+        int a = (from >>> 24) + (int) (((to >>> 24) - (from >>> 24)) * t);
+        int r = (from >> 16 & 0xff) + (int) (((to >> 16 & 0xff) - (from >> 16 & 0xff)) * t);
+        int g = (from >> 8 & 0xff) + (int) (((to >> 8 & 0xff) - (from >> 8 & 0xff)) * t);
+        int b = (from & 0xff) + (int) (((to & 0xff) - (from & 0xff)) * t);
+        return a << 24 | r << 16 | g << 8 | b;
     }
 
     protected TextViewKeyFrame setupFrame(View view, int[] containerLocation) {
-        KeyFrame frame = new TextViewKeyFrame();
-        ((TextViewKeyFrame) frame).textColor = ((TextView) view).getCurrentTextColor();
-        ((TextViewKeyFrame) frame).textSize = ((TextView) view).getTextSize();
+        TextView textView = (TextView) view;
+        TextViewKeyFrame frame = new TextViewKeyFrame();
+        frame.textColor = textView.getCurrentTextColor();
+        frame.textSize = textView.getTextSize();
+        frame.layout = textView.getLayout();
+        frame.textLeft = textView.getTotalPaddingLeft() - textView.getScrollX();
+        frame.textTop = textView.getTotalPaddingTop() - textView.getScrollY();
         final int[] viewLocation = new int[2];
         view.getLocationOnScreen(viewLocation);
         frame.rect.set(0, 0, view.getWidth(), view.getHeight());
         frame.rect.offset(viewLocation[0] - containerLocation[0], viewLocation[1] - containerLocation[1]);
-        return (TextViewKeyFrame) frame;
+        return frame;
     }
 }
@@ -0,0 +1,404 @@
+package pl.zielony.fragmentmanager;
+
+import android.util.SparseArray;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of views in a hierarchy by id, tag and class. Kept up to date with hierarchy change listeners set on
+ * indexed view groups. Listeners set by the app are kept and called by the index. Views can change ids and
+ * tags at any time, so these are checked again before each id and tag query. Results are in the same,
+ * breadth-first order as results of a traversal.
+ * <p>
+ * Root views of nested fragments are indexed, but their children aren't - they belong to the nested
+ * fragments, so they are searched with their own indexes or by traversing their hierarchies. The same
+ * happens with groups whose listener can't be chained. Views added to a group whose listener is replaced
+ * by the app after the index was created aren't indexed.
+ */
+class ViewIndex {
+    private static Field listenerField;
+    private static boolean listenerFieldResolved;
+
+    private final ViewGroup root;
+    private final SparseArray<List<View>> byId = new SparseArray<>();
+    private final Map<Object, List<View>> byTag = new HashMap<>();
+    private final Map<Class<?>, List<View>> byClass = new HashMap<>();
+    private final Map<View, IndexedView> indexed = new IdentityHashMap<>();
+    private final Map<ViewGroup, Listener> listeners = new IdentityHashMap<>();
+    private final List<ViewGroup> unindexedGroups = new ArrayList<>();
+
+    private static class IndexedView {
+        int id;
+        Object tag;
+
+        IndexedView(View view) {
+            id = view.getId();
+            tag = view.getTag();
+        }
+    }
+
+    private interface Filter {
+        boolean matches(View view);
+    }
+
+    private class Listener implements ViewGroup.OnHierarchyChangeListener {
+        final ViewGroup.OnHierarchyChangeListener previous;
+        boolean active = true;
+
+        Listener(ViewGroup.OnHierarchyChangeListener previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void onChildViewAdded(View parent, View child) {
+            if (active)
+                add(child);
+            if (previous != null)
+                previous.onChildViewAdded(parent, child);
+        }
+
+        @Override
+        public void onChildViewRemoved(View parent, View child) {
+            if (active)
+                remove(child);
+            if (previous != null)
+                previous.onChildViewRemoved(parent, child);
+        }
+    }
+
+    ViewIndex(ViewGroup root) {
+        this.root = root;
+        if (!listen(root)) {
+            unindexedGroups.add(root);
+            return;
+        }
+        for (int i = 0; i < root.getChildCount(); ++i)
+            add(root.getChildAt(i));
+    }
+
+    List<View> getById(int id) {
+        refresh();
+        ArrayList<View> result = new ArrayList<>();
+        List<View> views = byId.get(id);
+        if (views != null)
+            result.addAll(views);
+        for (int i = 0; i < unindexedGroups.size(); i++) {
+            ViewGroup group = unindexedGroups.get(i);
+            ViewIndex index = getNestedIndex(group);
+            if (index != null) {
+                result.addAll(index.getById(id));
+            } else {
+                collect(group, view -> view.getId() == id, result);
+            }
+        }
+        sortBreadthFirst(result);
+        return result;
+    }
+
+    List<View> getByTag(Object tag) {
+        refresh();
+        ArrayList<View> result = new ArrayList<>();
+        List<View> views = byTag.get(tag);
+        if (views != null)
+            result.addAll(views);
+        for (int i = 0; i < unindexedGroups.size(); i++) {
+            ViewGroup group = unindexedGroups.get(i);
+            ViewIndex index = getNestedIndex(group);
+            if (index != null) {
+                result.addAll(index.getByTag(tag));
+            } else {
+                collect(group, view -> tag.equals(view.getTag()), result);
+            }
+        }
+        sortBreadthFirst(result);
+        return result;
+    }
+
+    List<View> getByClass(Class<?> type) {
+        ArrayList<View> result = new ArrayList<>();
+        List<View> views = byClass.get(type);
+        if (views != null)
+            result.addAll(views);
+        for (int i = 0; i < unindexedGroups.size(); i++) {
+            ViewGroup group = unindexedGroups.get(i);
+            ViewIndex index = getNestedIndex(group);
+            if (index != null) {
+                result.addAll(index.getByClass(type));
+            } else {
+                collect(group, view -> view.getClass().equals(type), result);
+            }
+        }
+        sortBreadthFirst(result);
+        return result;
+    }
+
+    View getFirstByClass(Class<?> type) {
+        View first = null;
+        int[] firstPath = null;
+        List<View> views = byClass.get(type);
+        if (views != null) {
+            for (int i = 0; i < views.size(); i++) {
+                int[] path = getPath(views.get(i));
+                if (first == null || compare(path, firstPath) < 0) {
+                    first = views.get(i);
+                    firstPath = path;
+                }
+            }
+        }
+        for (int i = 0; i < unindexedGroups.size(); i++) {
+            ViewGroup group = unindexedGroups.get(i);
+            ViewIndex index = getNestedIndex(group);
+            View view = index != null ? index.getFirstByClass(type) : findFirst(group, type);
+            if (view == null)
+                continue;
+            int[] path = getPath(view);
+            if (first == null || compare(path, firstPath) < 0) {
+                first = view;
+                firstPath = path;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Removes hierarchy change listeners set by this index and puts back listeners set by the app
+     */
+    void release() {
+        for (Map.Entry<ViewGroup, Listener> entry : listeners.entrySet())
+            unlisten(entry.getKey(), entry.getValue());
+        listeners.clear();
+        unindexedGroups.clear();
+    }
+
+    private boolean listen(ViewGroup group) {
+        if (!resolveListenerField())
+            return false;
+        ViewGroup.OnHierarchyChangeListener previous;
+        try {
+            previous = (ViewGroup.OnHierarchyChangeListener) listenerField.get(group);
+        } catch (IllegalAccessException e) {
+            return false;
+        }
+        Listener listener = new Listener(previous);
+        group.setOnHierarchyChangeListener(listener);
+        listeners.put(group, listener);
+        return true;
+    }
+
+    private static void unlisten(ViewGroup group, Listener listener) {
+        listener.active = false;
+        try {
+            // if the app replaced or wrapped the listener, the inactive listener only passes calls on
+            if (listenerField.get(group) == listener)
+                group.setOnHierarchyChangeListener(listener.previous);
+        } catch (IllegalAccessException e) {
+            // can't happen, the field was accessible when the listener was set
+        }
+    }
+
+    private static boolean resolveListenerField() {
+        if (!listenerFieldResolved) {
+            listenerFieldResolved = true;
+            try {
+                Field field = ViewGroup.class.getDeclaredField("mOnHierarchyChangeListener");
+                field.setAccessible(true);
+                listenerField = field;
+            } catch (Exception e) {
+                listenerField = null;
+            }
+        }
+        return listenerField != null;
+    }
+
+    private ViewIndex getNestedIndex(ViewGroup group) {
+        return group != root && group instanceof FragmentRootView ? ((FragmentRootView) group).getViewIndex() : null;
+    }
+
+    private void add(View view) {
+        put(view);
+        if (!(view instanceof ViewGroup))
+            return;
+        ViewGroup group = (ViewGroup) view;
+        if (group instanceof FragmentRootView || !listen(group)) {
+            unindexedGroups.add(group);
+            return;
+        }
+        for (int i = 0; i < group.getChildCount(); ++i)
+            add(group.getChildAt(i));
+    }
+
+    private void remove(View view) {
+        unput(view);
+        if (!(view instanceof ViewGroup))
+            return;
+        ViewGroup group = (ViewGroup) view;
+        Listener listener = listeners.remove(group);
+        if (listener == null) {
+            unindexedGroups.remove(group);
+            return;
+        }
+        unlisten(group, listener);
+        for (int i = 0; i < group.getChildCount(); ++i)
+            remove(group.getChildAt(i));
+    }
+
+    private void put(View view) {
+        IndexedView indexedView = new IndexedView(view);
+        indexed.put(view, indexedView);
+        if (indexedView.id != View.NO_ID)
+            add(byId, indexedView.id, view);
+        if (indexedView.tag != null)
+            add(byTag, indexedView.tag, view);
+        add(byClass, view.getClass(), view);
+    }
+
+    private void unput(View view) {
+        IndexedView indexedView = indexed.remove(view);
+        if (indexedView == null)
+            return;
+        if (indexedView.id != View.NO_ID)
+            remove(byId, indexedView.id, view);
+        if (indexedView.tag != null)
+            remove(byTag, indexedView.tag, view);
+        remove(byClass, view.getClass(), view);
+    }
+
+    /**
+     * Moves views which changed their ids or tags since they were indexed
+     */
+    private void refresh() {
+        for (Map.Entry<View, IndexedView> entry : indexed.entrySet()) {
+            View view = entry.getKey();
+            IndexedView indexedView = entry.getValue();
+            int id = view.getId();
+            if (id != indexedView.id) {
+                if (indexedView.id != View.NO_ID)
+                    remove(byId, indexedView.id, view);
+                if (id != View.NO_ID)
+                    add(byId, id, view);
+                indexedView.id = id;
+            }
+            Object tag = view.getTag();
+            if (tag != indexedView.tag && (tag == null || !tag.equals(indexedView.tag))) {
+                if (indexedView.tag != null)
+                    remove(byTag, indexedView.tag, view);
+                if (tag != null)
+                    add(byTag, tag, view);
+                indexedView.tag = tag;
+            }
+        }
+    }
+
+    private void sortBreadthFirst(List<View> views) {
+        if (views.size() < 2)
+            return;
+        final Map<View, int[]> paths = new IdentityHashMap<>();
+        for (int i = 0; i < views.size(); i++)
+            paths.put(views.get(i), getPath(views.get(i)));
+        Collections.sort(views, (first, second) -> compare(paths.get(first), paths.get(second)));
+    }
+
+    /**
+     * @return child indices leading from the root to the view
+     */
+    private int[] getPath(View view) {
+        int depth = 0;
+        for (View v = view; v != root; v = (View) v.getParent())
+            depth++;
+        int[] path = new int[depth];
+        View v = view;
+        for (int i = depth - 1; i >= 0; i--) {
+            ViewGroup parent = (ViewGroup) v.getParent();
+            path[i] = parent.indexOfChild(v);
+            v = parent;
+        }
+        return path;
+    }
+
+    // breadth-first order: shallower views first, views on the same depth in the order of their ancestors
+    private static int compare(int[] first, int[] second) {
+        if (first.length != second.length)
+            return first.length < second.length ? -1 : 1;
+        for (int i = 0; i < first.length; i++) {
+            if (first[i] != second[i])
+                return first[i] < second[i] ? -1 : 1;
+        }
+        return 0;
+    }
+
+    private static void collect(ViewGroup root, Filter filter, List<View> result) {
+        ArrayDeque<ViewGroup> groups = new ArrayDeque<>();
+        groups.add(root);
+        while (!groups.isEmpty()) {
+            ViewGroup group = groups.poll();
+            for (int i = 0; i < group.getChildCount(); ++i) {
+                View child = group.getChildAt(i);
+                if (filter.matches(child))
+                    result.add(child);
+                if (child instanceof ViewGroup)
+                    groups.add((ViewGroup) child);
+            }
+        }
+    }
+
+    private static View findFirst(ViewGroup root, Class<?> type) {
+        ArrayDeque<ViewGroup> groups = new ArrayDeque<>();
+        groups.add(root);
+        while (!groups.isEmpty()) {
+            ViewGroup group = groups.poll();
+            for (int i = 0; i < group.getChildCount(); ++i) {
+                View child = group.getChildAt(i);
+                if (child.getClass().equals(type))
+                    return child;
+                if (child instanceof ViewGroup)
+                    groups.add((ViewGroup) child);
+            }
+        }
+        return null;
+    }
+
+    private static void add(SparseArray<List<View>> index, int key, View view) {
+        List<View> views = index.get(key);
+        if (views == null) {
+            views = new ArrayList<>(1);
+            index.put(key, views);
+        }
+        views.add(view);
+    }
+
+    private static void remove(SparseArray<List<View>> index, int key, View view) {
+        List<View> views = index.get(key);
+        if (views == null)
+            return;
+        views.remove(view);
+        if (views.isEmpty())
+            index.remove(key);
+    }
+
+    private static <K> void add(Map<K, List<View>> index, K key, View view) {
+        List<View> views = index.get(key);
+        if (views == null) {
+            views = new ArrayList<>(1);
+            index.put(key, views);
+        }
+        views.add(view);
+    }
+
+    private static <K> void remove(Map<K, List<View>> index, K key, View view) {
+        List<View> views = index.get(key);
+        if (views == null)
+            return;
+        views.remove(view);
+        if (views.isEmpty())
+            index.remove(key);
+    }
+}
@@ -7,6 +7,10 @@ import android.view.View;
  */
 
 public class ViewSharedElement extends SharedElement<KeyFrame, View> {
+    ViewSharedElement() {
+        // used when restoring a transaction
+    }
+
     public ViewSharedElement(View view, Fragment from, Fragment to) {
         this.idFrom = from.getId();
         this.idTo = to.getId();
@@ -0,0 +1,66 @@
+package pl.zielony.fragmentmanager.processor;
+
+import java.util.Set;
+
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+
+/**
+ * Generates a FragmentFactory for each concrete fragment class annotated with {@code @FragmentAnnotation},
+ * so the fragment can be created without calling its constructor through reflection.
+ */
+@SupportedAnnotationTypes(FactoryProcessor.FRAGMENT_ANNOTATION)
+public class FactoryProcessor extends GeneratingProcessor {
+    static final String FRAGMENT_ANNOTATION = "pl.zielony.fragmentmanager.FragmentAnnotation";
+    private static final String FRAGMENT_FACTORY = "pl.zielony.fragmentmanager.FragmentFactory";
+    private static final String SUFFIX = "_Factory";
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement annotationType = elements.getTypeElement(FRAGMENT_ANNOTATION);
+        if (annotationType == null)
+            return false;
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotationType)) {
+            if (element.getKind() != ElementKind.CLASS)
+                continue;
+            TypeElement type = (TypeElement) element;
+            if (!isFragment(type) || !canInstantiate(type))
+                continue;
+            String fragmentName = type.getQualifiedName().toString();
+            String source = packageHeader(type) +
+                    "public class " + generatedName(type, SUFFIX) + " implements " + FRAGMENT_FACTORY + "<" + fragmentName + "> {\n" +
+                    "    @Override\n" +
+                    "    public " + fragmentName + " create() {\n" +
+                    "        return new " + fragmentName + "();\n" +
+                    "    }\n" +
+                    "}\n";
+            write(type, SUFFIX, source);
+        }
+        return false;
+    }
+
+    private boolean canInstantiate(TypeElement type) {
+        Set<Modifier> modifiers = type.getModifiers();
+        if (modifiers.contains(Modifier.ABSTRACT) || !modifiers.contains(Modifier.PUBLIC) || !type.getTypeParameters().isEmpty())
+            return false;
+        if (type.getNestingKind() == NestingKind.MEMBER && !modifiers.contains(Modifier.STATIC))
+            return false;
+        if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS)
+            return false;
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.CONSTRUCTOR)
+                continue;
+            ExecutableElement constructor = (ExecutableElement) member;
+            if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC))
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,84 @@
+package pl.zielony.fragmentmanager.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Base for processors generating one helper class per fragment class. Generated classes are placed in the
+ * fragment's package and named after the fragment's binary name with a suffix.
+ */
+abstract class GeneratingProcessor extends AbstractProcessor {
+    static final String FRAGMENT = "pl.zielony.fragmentmanager.Fragment";
+
+    protected Elements elements;
+    protected Types types;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    protected boolean isFragment(TypeElement type) {
+        TypeElement fragmentType = elements.getTypeElement(FRAGMENT);
+        return fragmentType != null && types.isSubtype(types.erasure(type.asType()), types.erasure(fragmentType.asType()));
+    }
+
+    protected String generatedName(TypeElement type, String suffix) {
+        String binaryName = elements.getBinaryName(type).toString();
+        PackageElement packageElement = elements.getPackageOf(type);
+        if (!packageElement.isUnnamed())
+            binaryName = binaryName.substring(packageElement.getQualifiedName().length() + 1);
+        return binaryName + suffix;
+    }
+
+    protected String packageHeader(TypeElement type) {
+        PackageElement packageElement = elements.getPackageOf(type);
+        if (packageElement.isUnnamed())
+            return "";
+        return "package " + packageElement.getQualifiedName() + ";\n\n";
+    }
+
+    protected void write(TypeElement type, String suffix, String source) {
+        PackageElement packageElement = elements.getPackageOf(type);
+        String name = generatedName(type, suffix);
+        if (!packageElement.isUnnamed())
+            name = packageElement.getQualifiedName() + "." + name;
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(name, type);
+            Writer writer = file.openWriter();
+            try {
+                writer.write(source);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            error(type, "Unable to write " + name + ": " + e.getMessage());
+        }
+    }
+
+    protected void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    protected void note(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, message, element);
+    }
+}
@@ -0,0 +1,165 @@
+package pl.zielony.fragmentmanager.processor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Generates a StateBinder for each fragment class declaring {@code @State} fields. Classes which cannot be
+ * handled without reflection (private fields without accessors, fields typed with type variables) are
+ * skipped and keep using the reflection-based fallback.
+ */
+@SupportedAnnotationTypes(StateProcessor.STATE)
+public class StateProcessor extends GeneratingProcessor {
+    static final String STATE = "pl.zielony.fragmentmanager.State";
+    private static final String STATE_BINDER = "pl.zielony.fragmentmanager.StateBinder";
+    private static final String SUFFIX = "_StateBinder";
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement stateType = elements.getTypeElement(STATE);
+        if (stateType == null)
+            return false;
+
+        Map<TypeElement, List<VariableElement>> fieldsByType = new LinkedHashMap<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(stateType)) {
+            if (element.getKind() != ElementKind.FIELD)
+                continue;
+            TypeElement type = (TypeElement) element.getEnclosingElement();
+            List<VariableElement> fields = fieldsByType.get(type);
+            if (fields == null) {
+                fields = new ArrayList<>();
+                fieldsByType.put(type, fields);
+            }
+            fields.add((VariableElement) element);
+        }
+
+        for (Map.Entry<TypeElement, List<VariableElement>> entry : fieldsByType.entrySet()) {
+            TypeElement type = entry.getKey();
+            if (!isFragment(type)) {
+                error(type, "@State fields can be used only in fragments");
+                continue;
+            }
+            String source = generate(type, entry.getValue());
+            if (source != null)
+                write(type, SUFFIX, source);
+        }
+        return true;
+    }
+
+    private String generate(TypeElement type, List<VariableElement> fields) {
+        if (type.getModifiers().contains(Modifier.PRIVATE)) {
+            note(type, "private class, falling back to reflection");
+            return null;
+        }
+        TypeMirror serializable = elements.getTypeElement("java.io.Serializable").asType();
+        String fragmentName = types.erasure(type.asType()).toString();
+        StringBuilder save = new StringBuilder();
+        StringBuilder restore = new StringBuilder();
+
+        for (VariableElement field : fields) {
+            TypeMirror fieldType = field.asType();
+            String name = field.getSimpleName().toString();
+            String capitalized = name.substring(0, 1).toUpperCase() + name.substring(1);
+            boolean isPrivate = field.getModifiers().contains(Modifier.PRIVATE);
+
+            if (fieldType.getKind() == TypeKind.TYPEVAR) {
+                note(field, "field typed with a type variable, falling back to reflection");
+                return null;
+            }
+            boolean primitive = fieldType.getKind().isPrimitive();
+            if (!primitive && !types.isAssignable(fieldType, serializable) && isFinal(fieldType)) {
+                error(field, "@State field has to be Serializable");
+                return null;
+            }
+
+            String getter = null;
+            if (isPrivate) {
+                getter = findGetter(type, fieldType, capitalized);
+                if (getter == null) {
+                    note(field, "private field without a getter, falling back to reflection");
+                    return null;
+                }
+            }
+            String setter = findSetter(type, fieldType, "set" + capitalized);
+            if (setter == null && isPrivate) {
+                note(field, "private field without a setter, falling back to reflection");
+                return null;
+            }
+
+            String read = getter != null ? "fragment." + getter + "()" : "fragment." + name;
+            save.append("        state.putSerializable(\"").append(name).append("\", ")
+                    .append(primitive ? read : "(java.io.Serializable) " + read).append(");\n");
+
+            String castType = primitive ? types.boxedClass((PrimitiveType) fieldType).getQualifiedName().toString() : types.erasure(fieldType).toString();
+            String value = "(" + castType + ") state.getSerializable(\"" + name + "\")";
+            if (primitive) {
+                restore.append("        if (state.getSerializable(\"").append(name).append("\") != null)\n    ");
+            }
+            if (setter != null) {
+                restore.append("        fragment.").append(setter).append("(").append(value).append(");\n");
+            } else {
+                restore.append("        fragment.").append(name).append(" = ").append(value).append(";\n");
+            }
+        }
+
+        StringBuilder builder = new StringBuilder(packageHeader(type));
+        builder.append("import android.os.Bundle;\n\n")
+                .append("@SuppressWarnings(\"unchecked\")\n")
+                .append("public class ").append(generatedName(type, SUFFIX)).append(" implements ").append(STATE_BINDER).append("<").append(fragmentName).append("> {\n")
+                .append("    @Override\n")
+                .append("    public void save(").append(fragmentName).append(" fragment, Bundle state) {\n")
+                .append(save)
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public void restore(").append(fragmentName).append(" fragment, Bundle state) {\n")
+                .append(restore)
+                .append("    }\n")
+                .append("}\n");
+        return builder.toString();
+    }
+
+    private boolean isFinal(TypeMirror type) {
+        Element element = types.asElement(type);
+        return element != null && element.getModifiers().contains(Modifier.FINAL);
+    }
+
+    private String findGetter(TypeElement type, TypeMirror fieldType, String capitalized) {
+        for (Element member : elements.getAllMembers(type)) {
+            if (member.getKind() != ElementKind.METHOD || member.getModifiers().contains(Modifier.PRIVATE))
+                continue;
+            ExecutableElement method = (ExecutableElement) member;
+            String name = method.getSimpleName().toString();
+            if ((name.equals("get" + capitalized) || name.equals("is" + capitalized)) && method.getParameters().isEmpty()
+                    && types.isSameType(method.getReturnType(), fieldType))
+                return name;
+        }
+        return null;
+    }
+
+    private String findSetter(TypeElement type, TypeMirror fieldType, String name) {
+        for (Element member : elements.getAllMembers(type)) {
+            if (member.getKind() != ElementKind.METHOD || !member.getModifiers().contains(Modifier.PUBLIC))
+                continue;
+            ExecutableElement method = (ExecutableElement) member;
+            if (method.getSimpleName().contentEquals(name) && method.getParameters().size() == 1
+                    && types.isSameType(method.getParameters().get(0).asType(), fieldType))
+                return name;
+        }
+        return null;
+    }
+}